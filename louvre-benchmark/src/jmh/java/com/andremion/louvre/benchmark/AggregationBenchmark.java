@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import com.andremion.louvre.core.BucketAggregator;
+import com.andremion.louvre.core.SyntheticMedia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucket aggregation done on code from Android Q on, over the rows of the whole gallery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rowCount;
+
+    @Param({"20", "2000"})
+    int bucketCount;
+
+    private long[] mBucketIds;
+
+    @Setup
+    public void setUp() {
+        mBucketIds = new SyntheticMedia(rowCount, bucketCount, 0).getBucketIdsByBucket();
+    }
+
+    @Benchmark
+    public int[] aggregate() {
+        return BucketAggregator.aggregate(mBucketIds);
+    }
+
+}
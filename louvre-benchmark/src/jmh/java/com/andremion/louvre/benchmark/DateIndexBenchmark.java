@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import com.andremion.louvre.core.DateIndex;
+import com.andremion.louvre.core.SyntheticMedia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the date index of a bucket and looking up the month boundaries the fast scroller snaps to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DateIndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rowCount;
+
+    private long[] mDates;
+    private DateIndex mIndex;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mDates = new SyntheticMedia(rowCount, SyntheticMedia.DEFAULT_BUCKET_COUNT, 0).getDatesTaken();
+        mIndex = new DateIndex(mDates);
+    }
+
+    @Benchmark
+    public DateIndex build() {
+        return new DateIndex(mDates.clone());
+    }
+
+    @Benchmark
+    public int positionOf() {
+        mNext = (mNext + 1) % rowCount;
+        return mIndex.positionOf(mDates[mNext]);
+    }
+
+}
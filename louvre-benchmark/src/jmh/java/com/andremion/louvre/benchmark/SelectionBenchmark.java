@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import com.andremion.louvre.core.SelectionSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection membership is checked on every bind, bulk operations run on "select all".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelectionBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int selectionSize;
+
+    private List<String> mItems;
+    private SelectionSet<String> mSelection;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUpItems() {
+        // Twice the selection, so half of the lookups miss
+        mItems = new ArrayList<>(selectionSize * 2);
+        for (int i = 0; i < selectionSize * 2; i++) {
+            mItems.add("content://media/external/images/media/" + i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpSelection() {
+        mSelection = new SelectionSet<>(mItems.subList(0, selectionSize));
+    }
+
+    @Benchmark
+    public boolean contains() {
+        mNext = (mNext + 1) % mItems.size();
+        return mSelection.contains(mItems.get(mNext));
+    }
+
+    @Benchmark
+    public boolean toggle() {
+        mNext = (mNext + 1) % mItems.size();
+        return mSelection.toggle(mItems.get(mNext), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean addAllOrNone() {
+        SelectionSet<String> selection = new SelectionSet<>(mItems.subList(0, selectionSize));
+        return selection.addAllOrNone(mItems, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean replaceWith() {
+        return mSelection.replaceWith(mItems.subList(mNext++ % 2, selectionSize));
+    }
+
+}
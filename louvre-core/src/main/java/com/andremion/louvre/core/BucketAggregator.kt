@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+
+/**
+ * Aggregate media rows by bucket, for when the query itself can not do it.
+ */
+object BucketAggregator {
+
+    /**
+     * The rows of a bucket must be next to each other, newest first, so the first row of a bucket is its cover.
+     *
+     * @param bucketIds The bucket id of every media row
+     * @return The position of the first row of every bucket, in the same order of the rows
+     */
+    @JvmStatic
+    fun aggregate(bucketIds: LongArray): IntArray {
+        if (bucketIds.isEmpty()) return IntArray(0)
+        var count = 1
+        for (position in 1 until bucketIds.size) {
+            if (bucketIds[position] != bucketIds[position - 1]) count++
+        }
+        val positions = IntArray(count)
+        var index = 1
+        for (position in 1 until bucketIds.size) {
+            if (bucketIds[position] != bucketIds[position - 1]) positions[index++] = position
+        }
+        return positions
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+
+/**
+ * The date taken of every media row, in the same (descending) order of the data.
+ * It is read in background along with the data.
+ */
+class DateIndex(private val dates: LongArray) {
+
+    val size: Int get() = dates.size
+
+    fun dateAt(position: Int): Long = dates[position]
+
+    /**
+     * Binary search for the first position taken on or before the given date.
+     *
+     * @return The position found or [size] if every item is newer than the given date
+     */
+    fun positionOf(date: Long): Int {
+        var low = 0
+        var high = dates.size
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (dates[middle] > date) low = middle + 1
+            else high = middle
+        }
+        return low
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+
+/**
+ * The selected items, in the order they were selected.
+ *
+ * Membership is checked on every bind, so it is backed by a [LinkedHashSet] instead of a list.
+ */
+class SelectionSet<E> private constructor(
+    private val items: LinkedHashSet<E>
+) : MutableSet<E> by items {
+
+    constructor() : this(LinkedHashSet())
+
+    constructor(items: Collection<E>) : this(LinkedHashSet(items))
+
+    /**
+     * Select the item if it is not selected, otherwise unselect it.
+     *
+     * @return If the item was toggled, or false if selecting it would exceed [maxSize]
+     */
+    fun toggle(item: E, maxSize: Int): Boolean {
+        if (items.remove(item)) return true
+        if (items.size >= maxSize) return false
+        items.add(item)
+        return true
+    }
+
+    /**
+     * Select every given item that is not selected yet, or none of them if they would exceed [maxSize].
+     *
+     * @return If the items were added
+     */
+    fun addAllOrNone(items: Collection<E>, maxSize: Int): Boolean {
+        // Duplicated items are only counted once
+        val newItems = items.filterTo(LinkedHashSet<E>()) { it !in this.items }
+        if (this.items.size + newItems.size > maxSize) return false
+        this.items.addAll(newItems)
+        return true
+    }
+
+    /**
+     * Replace the selection with the given items, in their order.
+     *
+     * @return If the selection changed
+     */
+    fun replaceWith(items: Collection<E>): Boolean {
+        if (hasSameOrder(items)) return false
+        this.items.clear()
+        this.items.addAll(items)
+        return true
+    }
+
+    private fun hasSameOrder(items: Collection<E>): Boolean {
+        if (this.items.size != items.size) return false
+        val iterator = items.iterator()
+        return this.items.all { it == iterator.next() }
+    }
+
+    override fun equals(other: Any?): Boolean = items == other
+
+    override fun hashCode(): Int = items.hashCode()
+
+    override fun toString(): String = items.toString()
+}
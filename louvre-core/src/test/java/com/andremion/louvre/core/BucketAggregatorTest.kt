@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+package com.andremion.louvre.core
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+class BucketAggregatorTest {
+
+    @Test
+    fun emptyRows() {
+        assertArrayEquals(IntArray(0), BucketAggregator.aggregate(LongArray(0)))
+    }
+
+    @Test
+    fun singleBucket() {
+        assertArrayEquals(intArrayOf(0), BucketAggregator.aggregate(longArrayOf(7, 7, 7)))
+    }
+
+    @Test
+    fun singleRow() {
+        assertArrayEquals(intArrayOf(0), BucketAggregator.aggregate(longArrayOf(7)))
+    }
+
+    @Test
+    fun firstRowOfEveryRun() {
+        assertArrayEquals(
+            intArrayOf(0, 2, 3, 6),
+            BucketAggregator.aggregate(longArrayOf(1, 1, 2, 3, 3, 3, 1))
+        )
+    }
+}
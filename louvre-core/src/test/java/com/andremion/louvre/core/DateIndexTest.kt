@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+package com.andremion.louvre.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DateIndexTest {
+
+    private val index = DateIndex(longArrayOf(50, 40, 40, 40, 30, 10))
+
+    @Test
+    fun emptyIndex() {
+        assertEquals(0, DateIndex(LongArray(0)).positionOf(100))
+    }
+
+    @Test
+    fun dateNewerThanEveryItem() {
+        assertEquals(0, index.positionOf(60))
+    }
+
+    @Test
+    fun dateOlderThanEveryItem() {
+        assertEquals(index.size, index.positionOf(0))
+    }
+
+    @Test
+    fun exactDate() {
+        assertEquals(0, index.positionOf(50))
+        assertEquals(5, index.positionOf(10))
+    }
+
+    @Test
+    fun tiesResolveToTheFirstItem() {
+        assertEquals(1, index.positionOf(40))
+    }
+
+    @Test
+    fun dateBetweenItems() {
+        assertEquals(4, index.positionOf(35))
+        assertEquals(5, index.positionOf(20))
+    }
+}
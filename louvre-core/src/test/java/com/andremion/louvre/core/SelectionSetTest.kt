@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.core
+package com.andremion.louvre.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SelectionSetTest {
+
+    @Test
+    fun toggleSelectsAndUnselects() {
+        val selection = SelectionSet<String>()
+
+        assertTrue(selection.toggle("a", 2))
+        assertEquals(setOf("a"), selection)
+        assertTrue(selection.toggle("a", 2))
+        assertTrue(selection.isEmpty())
+    }
+
+    @Test
+    fun toggleRespectsMaxSize() {
+        val selection = SelectionSet(listOf("a", "b"))
+
+        assertFalse(selection.toggle("c", 2))
+        assertEquals(setOf("a", "b"), selection)
+        // Unselecting is always allowed
+        assertTrue(selection.toggle("a", 2))
+    }
+
+    @Test
+    fun keepsSelectionOrder() {
+        val selection = SelectionSet<String>()
+        selection.toggle("c", 3)
+        selection.toggle("a", 3)
+        selection.toggle("b", 3)
+
+        assertEquals(listOf("c", "a", "b"), selection.toList())
+    }
+
+    @Test
+    fun addAllOrNoneAddsOnlyNewItems() {
+        val selection = SelectionSet(listOf("a"))
+
+        assertTrue(selection.addAllOrNone(listOf("a", "b"), 2))
+        assertEquals(listOf("a", "b"), selection.toList())
+    }
+
+    @Test
+    fun addAllOrNoneAddsNothingOverMaxSize() {
+        val selection = SelectionSet(listOf("a"))
+
+        assertFalse(selection.addAllOrNone(listOf("b", "c"), 2))
+        assertEquals(setOf("a"), selection)
+    }
+
+    @Test
+    fun addAllOrNoneCountsDuplicatesOnce() {
+        val selection = SelectionSet(listOf("a"))
+
+        assertTrue(selection.addAllOrNone(listOf("b", "b"), 2))
+        assertEquals(listOf("a", "b"), selection.toList())
+    }
+
+    @Test
+    fun replaceWithReportsChanges() {
+        val selection = SelectionSet(listOf("a", "b"))
+
+        assertFalse(selection.replaceWith(listOf("a", "b")))
+        assertTrue(selection.replaceWith(listOf("b", "a")))
+        assertEquals(listOf("b", "a"), selection.toList())
+        assertTrue(selection.replaceWith(emptyList()))
+        assertTrue(selection.isEmpty())
+    }
+
+    @Test
+    fun equalsOtherSets() {
+        assertEquals(setOf("a", "b"), SelectionSet(listOf("a", "b")))
+        assertEquals(SelectionSet(listOf("a", "b")), setOf("a", "b"))
+        assertEquals(setOf("a", "b").hashCode(), SelectionSet(listOf("a", "b")).hashCode())
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.core;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic media library, shaped like a real one: bucket sizes follow a Zipf distribution, so a few buckets
+ * like the camera hold most of the media, and dates are skewed to the recent past.
+ * <p>
+ * The same seed always generates the same library, so benchmark runs and tests can be compared.
+ */
+public final class SyntheticMedia {
+
+    public static final int DEFAULT_ROW_COUNT = 100000;
+    public static final int DEFAULT_BUCKET_COUNT = 2000;
+
+    private static final long TIME_SPAN = TimeUnit.DAYS.toMillis(10 * 365);
+    // The higher, the more media in the recent past
+    private static final int DATE_SKEW = 3;
+    // A fixed "now", so the dates do not depend on when the benchmark runs
+    private static final long NOW = 1600000000000L;
+
+    private final long[] mIds;
+    private final long[] mBucketIds;
+    private final long[] mDatesTaken;
+
+    public SyntheticMedia() {
+        this(DEFAULT_ROW_COUNT, DEFAULT_BUCKET_COUNT, 0);
+    }
+
+    public SyntheticMedia(int rowCount, int bucketCount, long seed) {
+        Random random = new Random(seed);
+
+        double[] bucketWeights = new double[bucketCount];
+        double total = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            total += 1d / (bucket + 1);
+            bucketWeights[bucket] = total;
+        }
+
+        mDatesTaken = new long[rowCount];
+        for (int position = 0; position < rowCount; position++) {
+            double age = Math.pow(random.nextDouble(), DATE_SKEW);
+            mDatesTaken[position] = NOW - (long) (age * TIME_SPAN);
+        }
+        // Newest first, as the media query sorts them
+        Arrays.sort(mDatesTaken);
+        reverse(mDatesTaken);
+
+        mIds = new long[rowCount];
+        mBucketIds = new long[rowCount];
+        for (int position = 0; position < rowCount; position++) {
+            // Newer media were inserted later, so they have greater ids
+            mIds[position] = rowCount - position;
+            int bucket = Arrays.binarySearch(bucketWeights, random.nextDouble() * total);
+            mBucketIds[position] = bucket >= 0 ? bucket : -bucket - 1;
+        }
+    }
+
+    public int getRowCount() {
+        return mIds.length;
+    }
+
+    /**
+     * @return The media ids, newest first
+     */
+    public long[] getIds() {
+        return mIds;
+    }
+
+    /**
+     * @return The date taken of every media, newest first
+     */
+    public long[] getDatesTaken() {
+        return mDatesTaken;
+    }
+
+    /**
+     * @return The bucket id of every media, newest first
+     */
+    public long[] getBucketIds() {
+        return mBucketIds;
+    }
+
+    /**
+     * @return The bucket ids sorted as the bucket query does when it can not aggregate, by bucket and then by date
+     */
+    public long[] getBucketIdsByBucket() {
+        long[] bucketIds = mBucketIds.clone();
+        Arrays.sort(bucketIds);
+        return bucketIds;
+    }
+
+    private static void reverse(long[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Frame timing collected while a list of the picker was scrolling, reported to {@link MetricsListener#onScrollFrames(FrameStats)}
+ * whenever the list is about to display other data, change its span count or go away.
+ */
+public final class FrameStats {
+
+    public static final String SOURCE_GALLERY = "gallery";
+    public static final String SOURCE_PREVIEW = "preview";
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({SOURCE_GALLERY, SOURCE_PREVIEW})
+    public @interface Source {
+    }
+
+    private final String mSource;
+    private final int mItemCount;
+    private final int mSpanCount;
+    private final int mFrameCount;
+    private final int mJankCount;
+    private final float mFrameIntervalMillis;
+    private final int mFrameTime50thMillis;
+    private final int mFrameTime90thMillis;
+    private final int mFrameTime99thMillis;
+
+    public FrameStats(@NonNull @Source String source, int itemCount, int spanCount,
+                      int frameCount, int jankCount, float frameIntervalMillis,
+                      int frameTime50thMillis, int frameTime90thMillis, int frameTime99thMillis) {
+        mSource = source;
+        mItemCount = itemCount;
+        mSpanCount = spanCount;
+        mFrameCount = frameCount;
+        mJankCount = jankCount;
+        mFrameIntervalMillis = frameIntervalMillis;
+        mFrameTime50thMillis = frameTime50thMillis;
+        mFrameTime90thMillis = frameTime90thMillis;
+        mFrameTime99thMillis = frameTime99thMillis;
+    }
+
+    /**
+     * @return Which list was scrolling, {@link #SOURCE_GALLERY} or {@link #SOURCE_PREVIEW}
+     */
+    @NonNull
+    @Source
+    public String getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return The item count of the list, like the size of the bucket being displayed
+     */
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * @return The span count of the grid, 1 for the preview
+     */
+    public int getSpanCount() {
+        return mSpanCount;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return The frames that took longer than one and a half refresh intervals of the display
+     */
+    public int getJankCount() {
+        return mJankCount;
+    }
+
+    /**
+     * @return The refresh interval of the display
+     */
+    public float getFrameIntervalMillis() {
+        return mFrameIntervalMillis;
+    }
+
+    public int getFrameTime50thMillis() {
+        return mFrameTime50thMillis;
+    }
+
+    public int getFrameTime90thMillis() {
+        return mFrameTime90thMillis;
+    }
+
+    public int getFrameTime99thMillis() {
+        return mFrameTime99thMillis;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FrameStats{" +
+                "source=" + mSource +
+                ", itemCount=" + mItemCount +
+                ", spanCount=" + mSpanCount +
+                ", frameCount=" + mFrameCount +
+                ", jankCount=" + mJankCount +
+                ", frameIntervalMillis=" + mFrameIntervalMillis +
+                ", p50=" + mFrameTime50thMillis +
+                ", p90=" + mFrameTime90thMillis +
+                ", p99=" + mFrameTime99thMillis +
+                '}';
+    }
+
+}
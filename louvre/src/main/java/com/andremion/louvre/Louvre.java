@@ -17,15 +17,23 @@
 package com.andremion.louvre;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringDef;
 import androidx.fragment.app.Fragment;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import com.andremion.louvre.data.MediaPager;
+import com.andremion.louvre.data.MediaSource;
+import com.andremion.louvre.data.MediaSources;
+import com.andremion.louvre.data.MediaQuery;
 import com.andremion.louvre.home.GalleryActivity;
+import com.andremion.louvre.util.Metrics;
+import com.andremion.louvre.util.SelectionEvents;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -56,6 +64,7 @@ public class Louvre {
     private int mMaxSelection;
     private List<Uri> mSelection;
     private String[] mMediaTypeFilter;
+    private boolean mLightweightCells;
 
     private Louvre(@NonNull Activity activity) {
         mActivity = activity;
@@ -75,6 +84,55 @@ public class Louvre {
         return new Louvre(fragment);
     }
 
+    /**
+     * Set a listener to report the latency and cache behaviour of every picker opened, or null to stop reporting
+     */
+    public static void setMetricsListener(@Nullable MetricsListener listener) {
+        Metrics.setListener(listener);
+    }
+
+    /**
+     * Set a listener for each item selected or unselected while the picker is open, or null to stop listening.
+     * A {@link ResultProcessor} can be set to process the images as soon as they are selected.
+     */
+    public static void setSelectionListener(@Nullable SelectionListener listener) {
+        SelectionEvents.setListener(listener);
+    }
+
+    /**
+     * Query the media of every bucket with no UI, newest first and a page at a time
+     *
+     * @param pageSize        The max items of each page
+     * @param mediaTypeFilter The media types to query, or every type if none
+     */
+    @NonNull
+    public static MediaPager query(@NonNull Context context, @IntRange(from = 1) int pageSize,
+                                   @MediaType @NonNull String... mediaTypeFilter) {
+        return query(context, MediaQuery.ALL_MEDIA_BUCKET_ID, pageSize, mediaTypeFilter);
+    }
+
+    /**
+     * Query the media of a single bucket with no UI, newest first and a page at a time
+     *
+     * @param bucketId        The bucket to query, as in {@link com.andremion.louvre.data.MediaItem#getBucketId()}
+     * @param pageSize        The max items of each page
+     * @param mediaTypeFilter The media types to query, or every type if none
+     */
+    @NonNull
+    public static MediaPager query(@NonNull Context context, long bucketId, @IntRange(from = 1) int pageSize,
+                                   @MediaType @NonNull String... mediaTypeFilter) {
+        return new MediaPager(context.getContentResolver(), bucketId, pageSize, mediaTypeFilter);
+    }
+
+    /**
+     * Set where the picker finds media, {@link com.andremion.louvre.data.MediaStoreSource} by default.
+     * The media of every source are merged by date in the "All Media" bucket.
+     * It should be set on {@link android.app.Application#onCreate()}, so it is kept if the process is killed.
+     */
+    public static void setMediaSources(@NonNull MediaSource... sources) {
+        MediaSources.set(sources);
+    }
+
     /**
      * Set the request code to return on {@link Activity#onActivityResult(int, int, Intent)}
      */
@@ -107,14 +165,23 @@ public class Louvre {
         return this;
     }
 
+    /**
+     * Draw each media item with a single lightweight view instead of an inflated layout.
+     * Useful for dense grids on low-end devices.
+     */
+    public Louvre setLightweightCells(boolean lightweightCells) {
+        mLightweightCells = lightweightCells;
+        return this;
+    }
+
     public void open() {
         if (mRequestCode == -1) {
             throw new IllegalArgumentException("You need to define a request code in setRequestCode(int) method");
         }
         if (mActivity != null) {
-            GalleryActivity.startActivity(mActivity, mRequestCode, mMaxSelection, mSelection, mMediaTypeFilter);
+            GalleryActivity.startActivity(mActivity, mRequestCode, mMaxSelection, mSelection, mLightweightCells, mMediaTypeFilter);
         } else {
-            GalleryActivity.startActivity(mFragment, mRequestCode, mMaxSelection, mSelection, mMediaTypeFilter);
+            GalleryActivity.startActivity(mFragment, mRequestCode, mMaxSelection, mSelection, mLightweightCells, mMediaTypeFilter);
         }
     }
 
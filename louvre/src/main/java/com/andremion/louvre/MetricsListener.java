@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Listener for the latency and cache behaviour of the picker, set by {@link Louvre#setMetricsListener(MetricsListener)}.
+ * <p>
+ * Callbacks may be called from background threads, so they should just hand the values off to some telemetry.
+ * See {@link SimpleMetricsListener} to implement only some of them.
+ */
+public interface MetricsListener {
+
+    /**
+     * @param durationMillis Time from the storage permission granted to the first query finished
+     */
+    void onFirstQueryFinished(long durationMillis);
+
+    /**
+     * @param durationMillis Time to run the query of the bucket list and fill the first cursor window
+     * @param rowCount       The number of rows returned
+     */
+    void onBucketsQueryFinished(long durationMillis, int rowCount);
+
+    /**
+     * @param bucketId       The bucket queried, or {@link com.andremion.louvre.data.MediaQuery#ALL_MEDIA_BUCKET_ID}
+     * @param durationMillis Time to run the query of the bucket media and fill the first cursor window
+     * @param rowCount       The number of rows returned
+     */
+    void onMediaQueryFinished(long bucketId, long durationMillis, int rowCount);
+
+    /**
+     * Reported when the buckets are aggregated on code, since the query can not do it from Android Q on
+     *
+     * @param durationMillis Time to aggregate the media rows into buckets
+     * @param bucketCount    The number of buckets
+     */
+    void onBucketsAggregated(long durationMillis, int bucketCount);
+
+    /**
+     * @param durationMillis Time from the picker opened to the first thumbnail ready to be painted
+     */
+    void onFirstThumbnailLoaded(long durationMillis);
+
+    /**
+     * Reported when the picker is closed
+     *
+     * @param memoryHits Thumbnails loaded from the memory cache
+     * @param diskHits   Thumbnails loaded from the disk cache
+     * @param misses     Thumbnails decoded from the original media
+     */
+    void onThumbnailCacheStats(int memoryHits, int diskHits, int misses);
+
+    /**
+     * @param durationMillis Time the preview enter transition was postponed, waiting for its image
+     */
+    void onPreviewTransitionPostponed(long durationMillis);
+
+    /**
+     * @param stats The frame timing while the gallery grid or the preview pager was scrolling
+     */
+    void onScrollFrames(@NonNull FrameStats stats);
+
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional processing of the picked images, like resizing and recompressing them before an upload.
+ * <p>
+ * The images are processed at the same time on a pool of one thread per core, and each result is delivered
+ * on the main thread as soon as it is ready. An image can be processed as soon as it is selected,
+ * like when it is set by {@link Louvre#setSelectionListener(SelectionListener)}, so most of the work is done
+ * by the time the picker returns. Processing the same image again just delivers the previous result.
+ * <p>
+ * The images are decoded by Glide, so they are rotated upright and downsampled while decoding.
+ * They fit in 2048 x 2048 by default, and only one image at a time is decoded in its original size.
+ */
+public class ResultProcessor implements SelectionListener {
+
+    public interface Callback {
+
+        /**
+         * @param result The file Uri of the processed image
+         */
+        void onProcessed(@NonNull Uri source, @NonNull Uri result);
+
+        void onFailed(@NonNull Uri source, @NonNull Exception error);
+    }
+
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final long KEEP_ALIVE_SECONDS = 1;
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    private static final int DEFAULT_QUALITY = 90;
+    private static final String OUTPUT_DIRECTORY = "louvre";
+    // Metadata kept when the EXIF is not stripped. The orientation is not, since the pixels are rotated upright.
+    private static final String[] EXIF_TAGS = {
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_DATETIME_ORIGINAL,
+            ExifInterface.TAG_DATETIME_DIGITIZED,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_EXPOSURE_TIME,
+            ExifInterface.TAG_F_NUMBER,
+            ExifInterface.TAG_PHOTOGRAPHIC_SENSITIVITY,
+            ExifInterface.TAG_FOCAL_LENGTH,
+            ExifInterface.TAG_FLASH,
+            ExifInterface.TAG_WHITE_BALANCE,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF,
+            ExifInterface.TAG_GPS_ALTITUDE,
+            ExifInterface.TAG_GPS_ALTITUDE_REF,
+            ExifInterface.TAG_GPS_TIMESTAMP,
+            ExifInterface.TAG_GPS_DATESTAMP
+    };
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_SIZE = 2048;
+    // A full resolution bitmap can take tens of MB, so they are not decoded at the same time
+    private static final Semaphore ORIGINAL_SIZE_DECODES = new Semaphore(1);
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Context mContext;
+    private final Callback mCallback;
+    // Only touched on the main thread
+    private final Map<Key, Future<?>> mTasks = new HashMap<>();
+    private final Map<Key, Uri> mResults = new HashMap<>();
+    private int mMaxWidth = DEFAULT_MAX_SIZE;
+    private int mMaxHeight = DEFAULT_MAX_SIZE;
+    private Bitmap.CompressFormat mFormat = Bitmap.CompressFormat.JPEG;
+    private int mQuality = DEFAULT_QUALITY;
+    private boolean mStripExif = true;
+    private File mOutputDirectory;
+
+    @VisibleForTesting
+    ResultProcessor(@NonNull Context context, @NonNull Callback callback) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+        mOutputDirectory = new File(context.getCacheDir(), OUTPUT_DIRECTORY);
+    }
+
+    public static ResultProcessor init(@NonNull Context context, @NonNull Callback callback) {
+        return new ResultProcessor(context, callback);
+    }
+
+    /**
+     * Set the max dimensions of the results, 2048 x 2048 by default. Smaller images are not scaled up.
+     */
+    public ResultProcessor setMaxSize(@IntRange(from = 1) int maxWidth, @IntRange(from = 1) int maxHeight) {
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        return this;
+    }
+
+    /**
+     * Keep the original dimensions of the results. These images are decoded one at a time.
+     */
+    public ResultProcessor setOriginalSize() {
+        mMaxWidth = Target.SIZE_ORIGINAL;
+        mMaxHeight = Target.SIZE_ORIGINAL;
+        return this;
+    }
+
+    /**
+     * Set the format of the results, {@link Bitmap.CompressFormat#JPEG} by default
+     */
+    public ResultProcessor setFormat(@NonNull Bitmap.CompressFormat format) {
+        mFormat = format;
+        return this;
+    }
+
+    /**
+     * Set the compression quality of the results, 90 by default
+     */
+    public ResultProcessor setQuality(@IntRange(from = 0, to = 100) int quality) {
+        mQuality = quality;
+        return this;
+    }
+
+    /**
+     * Set if the EXIF metadata, like the location, is left out of the results, the default.
+     * Otherwise the main tags are copied into JPEG results.
+     */
+    public ResultProcessor setStripExif(boolean stripExif) {
+        mStripExif = stripExif;
+        return this;
+    }
+
+    /**
+     * Set where the results are written, a folder in the cache directory by default
+     */
+    public ResultProcessor setOutputDirectory(@NonNull File outputDirectory) {
+        mOutputDirectory = outputDirectory;
+        return this;
+    }
+
+    /**
+     * Process an image, if it is not being processed yet with the current settings
+     */
+    @MainThread
+    public void process(@NonNull final Uri source) {
+        final Options options = new Options(mMaxWidth, mMaxHeight, mFormat, mQuality, mStripExif, mOutputDirectory);
+        final Key key = new Key(source, options);
+        Uri result = mResults.get(key);
+        if (result != null) {
+            mCallback.onProcessed(source, result);
+            return;
+        }
+        if (mTasks.containsKey(key)) {
+            return;
+        }
+        mTasks.put(key, EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliverResult(key, processWithinLimits(source, options));
+                } catch (Exception e) {
+                    deliverError(key, e);
+                }
+            }
+        }));
+    }
+
+    @MainThread
+    public void process(@NonNull List<Uri> sources) {
+        for (Uri source : sources) {
+            process(source);
+        }
+    }
+
+    /**
+     * Stop processing an image and delete its results, like when it is unselected
+     */
+    @MainThread
+    public void cancel(@NonNull Uri source) {
+        for (Iterator<Map.Entry<Key, Future<?>>> iterator = mTasks.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Key, Future<?>> entry = iterator.next();
+            if (entry.getKey().mSource.equals(source)) {
+                entry.getValue().cancel(true);
+                iterator.remove();
+            }
+        }
+        for (Iterator<Map.Entry<Key, Uri>> iterator = mResults.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Key, Uri> entry = iterator.next();
+            if (entry.getKey().mSource.equals(source)) {
+                deleteResult(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onMediaSelected(long mediaId, @NonNull Uri uri) {
+        process(uri);
+    }
+
+    @Override
+    public void onMediaUnselected(long mediaId, @NonNull Uri uri) {
+        cancel(uri);
+    }
+
+    /**
+     * Stop processing every image and delete the results, like when the picker is cancelled
+     */
+    @MainThread
+    public void cancelAll() {
+        for (Future<?> task : mTasks.values()) {
+            task.cancel(true);
+        }
+        mTasks.clear();
+        for (Uri result : mResults.values()) {
+            deleteResult(result);
+        }
+        mResults.clear();
+    }
+
+    private void deliverResult(@NonNull final Key key, @NonNull final Uri result) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mTasks.remove(key) == null) {
+                    // Cancelled meanwhile
+                    deleteResult(result);
+                    return;
+                }
+                mResults.put(key, result);
+                mCallback.onProcessed(key.mSource, result);
+            }
+        });
+    }
+
+    private void deliverError(@NonNull final Key key, @NonNull final Exception error) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mTasks.remove(key) != null) {
+                    mCallback.onFailed(key.mSource, error);
+                }
+            }
+        });
+    }
+
+    private static void deleteResult(@NonNull Uri result) {
+        String path = result.getPath();
+        if (path != null) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(path).delete();
+        }
+    }
+
+    @WorkerThread
+    @NonNull
+    private Uri processWithinLimits(@NonNull Uri source, @NonNull Options options) throws Exception {
+        if (!options.isOriginalSize()) {
+            return processImage(source, options);
+        }
+        ORIGINAL_SIZE_DECODES.acquire();
+        try {
+            return processImage(source, options);
+        } finally {
+            ORIGINAL_SIZE_DECODES.release();
+        }
+    }
+
+    @VisibleForTesting
+    @WorkerThread
+    @NonNull
+    Uri processImage(@NonNull Uri source, @NonNull Options options) throws Exception {
+        RequestOptions requestOptions = new RequestOptions()
+                .downsample(DownsampleStrategy.CENTER_INSIDE)
+                .disallowHardwareConfig()
+                .skipMemoryCache(true)
+                .diskCacheStrategy(DiskCacheStrategy.NONE);
+        FutureTarget<Bitmap> target = Glide.with(mContext)
+                .asBitmap()
+                .load(source)
+                .apply(requestOptions)
+                .submit(options.mMaxWidth, options.mMaxHeight);
+        File file;
+        try {
+            Bitmap bitmap = getBitmap(target);
+            if (!options.mOutputDirectory.mkdirs() && !options.mOutputDirectory.isDirectory()) {
+                throw new IOException("Could not create " + options.mOutputDirectory);
+            }
+            file = File.createTempFile(OUTPUT_DIRECTORY, getExtension(options.mFormat), options.mOutputDirectory);
+            writeBitmap(bitmap, file, options);
+        } finally {
+            Glide.with(mContext).clear(target);
+        }
+        if (!options.mStripExif && options.mFormat == Bitmap.CompressFormat.JPEG) {
+            try {
+                copyExif(source, file);
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                throw e;
+            }
+        }
+        return Uri.fromFile(file);
+    }
+
+    private static void writeBitmap(@NonNull Bitmap bitmap, @NonNull File file, @NonNull Options options) throws IOException {
+        boolean written = false;
+        OutputStream output = new FileOutputStream(file);
+        try {
+            written = bitmap.compress(options.mFormat, options.mQuality, output);
+        } finally {
+            output.close();
+            if (!written) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        if (!written) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    @NonNull
+    private static Bitmap getBitmap(@NonNull FutureTarget<Bitmap> target) throws Exception {
+        try {
+            return target.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private void copyExif(@NonNull Uri source, @NonNull File file) throws IOException {
+        InputStream input = mContext.getContentResolver().openInputStream(source);
+        if (input == null) {
+            return;
+        }
+        try {
+            ExifInterface sourceExif = new ExifInterface(input);
+            ExifInterface resultExif = new ExifInterface(file.getAbsolutePath());
+            for (String tag : EXIF_TAGS) {
+                String value = sourceExif.getAttribute(tag);
+                if (value != null) {
+                    resultExif.setAttribute(tag, value);
+                }
+            }
+            resultExif.saveAttributes();
+        } finally {
+            input.close();
+        }
+    }
+
+    @NonNull
+    private static String getExtension(@NonNull Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return ".png";
+            case JPEG:
+                return ".jpg";
+            default:
+                return ".webp";
+        }
+    }
+
+    /**
+     * Snapshot of the settings when an image is queued, so they can be changed meanwhile
+     */
+    @VisibleForTesting
+    static class Options {
+
+        final int mMaxWidth;
+        final int mMaxHeight;
+        final Bitmap.CompressFormat mFormat;
+        final int mQuality;
+        final boolean mStripExif;
+        final File mOutputDirectory;
+
+        Options(int maxWidth, int maxHeight, @NonNull Bitmap.CompressFormat format, int quality,
+                boolean stripExif, @NonNull File outputDirectory) {
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            mFormat = format;
+            mQuality = quality;
+            mStripExif = stripExif;
+            mOutputDirectory = outputDirectory;
+        }
+
+        boolean isOriginalSize() {
+            return mMaxWidth == Target.SIZE_ORIGINAL || mMaxHeight == Target.SIZE_ORIGINAL;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Options options = (Options) o;
+            return mMaxWidth == options.mMaxWidth
+                    && mMaxHeight == options.mMaxHeight
+                    && mQuality == options.mQuality
+                    && mStripExif == options.mStripExif
+                    && mFormat == options.mFormat
+                    && mOutputDirectory.equals(options.mOutputDirectory);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mMaxWidth;
+            result = 31 * result + mMaxHeight;
+            result = 31 * result + mFormat.hashCode();
+            result = 31 * result + mQuality;
+            result = 31 * result + (mStripExif ? 1 : 0);
+            result = 31 * result + mOutputDirectory.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * An image is processed again when the settings change, so its results are told apart by them
+     */
+    private static class Key {
+
+        private final Uri mSource;
+        private final Options mOptions;
+
+        Key(@NonNull Uri source, @NonNull Options options) {
+            mSource = source;
+            mOptions = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return mSource.equals(key.mSource) && mOptions.equals(key.mOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mSource.hashCode() + mOptions.hashCode();
+        }
+    }
+
+}
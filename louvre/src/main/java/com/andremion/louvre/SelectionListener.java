@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Listener for each item selected or unselected while the picker is open, set by
+ * {@link Louvre#setSelectionListener(SelectionListener)}, so the work on a selected item can start right away
+ * instead of waiting for the picker result.
+ * <p>
+ * Callbacks are called on the main thread. The initial selection given by {@link Louvre#setSelection(java.util.List)}
+ * is not reported. When the picker is cancelled, the items selected while it was open are reported as unselected.
+ * {@link ResultProcessor} implements it to process the images as soon as they are selected.
+ */
+public interface SelectionListener {
+
+    /**
+     * The id used when the id of an item is unknown, like the items of the initial selection from other sources
+     */
+    long NO_ID = -1;
+
+    /**
+     * @param mediaId The id of the media in the picker, the MediaStore id for the default source, or {@link #NO_ID}
+     * @param uri     The Uri returned by the picker for the media
+     */
+    void onMediaSelected(long mediaId, @NonNull Uri uri);
+
+    /**
+     * @param mediaId The id of the media in the picker, the MediaStore id for the default source, or {@link #NO_ID}
+     * @param uri     The Uri returned by the picker for the media
+     */
+    void onMediaUnselected(long mediaId, @NonNull Uri uri);
+}
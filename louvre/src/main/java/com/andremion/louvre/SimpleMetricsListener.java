@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link MetricsListener} with empty callbacks, to override only the ones needed
+ */
+public abstract class SimpleMetricsListener implements MetricsListener {
+
+    @Override
+    public void onFirstQueryFinished(long durationMillis) {
+    }
+
+    @Override
+    public void onBucketsQueryFinished(long durationMillis, int rowCount) {
+    }
+
+    @Override
+    public void onMediaQueryFinished(long bucketId, long durationMillis, int rowCount) {
+    }
+
+    @Override
+    public void onBucketsAggregated(long durationMillis, int bucketCount) {
+    }
+
+    @Override
+    public void onFirstThumbnailLoaded(long durationMillis) {
+    }
+
+    @Override
+    public void onThumbnailCacheStats(int memoryHits, int diskHits, int misses) {
+    }
+
+    @Override
+    public void onPreviewTransitionPostponed(long durationMillis) {
+    }
+
+    @Override
+    public void onScrollFrames(@NonNull FrameStats stats) {
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.webkit.MimeTypeMap
+import java.io.File
+import java.util.Locale
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.TimeUnit
+
+// The ids are hashed into the 56 bits that MediaSources leaves to each source
+private const val MAX_ID = (1L shl 56) - 1
+private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+private const val FNV_PRIME = 0x100000001b3L
+
+/**
+ * [MediaSource] of the images in some directories, like the app private ones that are never indexed by MediaStore.
+ * Each root directory is a bucket, with the ids from 1 in the order of the roots.
+ * The media ids are hashed from the file paths, so they are the same across processes.
+ *
+ * The directories are walked in parallel, each one in its own task. A directory is only listed again when its
+ * last modified time changed, otherwise its previous listing is used, so a rescan of unchanged folders just reads
+ * their times. Files rewritten in place do not change the time of their directory, so they are not noticed.
+ *
+ * The media Uris are file Uris, so the selection is meant to be used by the app itself.
+ */
+class DirectorySource(vararg roots: File?) : MediaSource {
+
+    private class MediaFile(val id: Long, val name: String, val mimeType: String?, val lastModified: Long)
+
+    private class Directory(
+        val lastModified: Long,
+        val files: List<MediaFile>,
+        val directories: List<File>
+    )
+
+    private class Bucket(val id: Long, val name: String, val files: List<MediaFile>)
+
+    // Null roots are skipped, like an unavailable getExternalFilesDir
+    private val roots = roots.filterNotNull().map { it.absoluteFile }
+    // Guarded by this
+    private var directories = HashMap<File, Directory>()
+    // Guarded by ids, the scan tasks obtain them while the scan holds this
+    private val ids = HashMap<String, Long>()
+    private val paths = HashMap<Long, String>()
+
+    override fun queryMedia(
+        context: Context,
+        bucketId: Long,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        val files = scan(cancellationSignal)
+            .filter { ALL_MEDIA_BUCKET_ID == bucketId || it.id == bucketId }
+            .flatMap { bucket -> bucket.files.filter { it.matches(mediaTypes) }.map { bucket to it } }
+            .sortedByDescending { (_, file) -> file.lastModified }
+        return MatrixCursor(IMAGE_PROJECTION, files.size).apply {
+            for ((bucket, file) in files) {
+                newRow()
+                    .add(file.id)
+                    .add(bucket.id)
+                    .add(file.name)
+                    .add(file.lastModified)
+            }
+        }
+    }
+
+    override fun queryBuckets(
+        context: Context,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        val cursor = MatrixCursor(BUCKET_PROJECTION)
+        for (bucket in scan(cancellationSignal)) {
+            val cover = bucket.files.filter { it.matches(mediaTypes) }.maxByOrNull { it.lastModified } ?: continue
+            cursor.newRow()
+                .add(bucket.id)
+                .add(bucket.name)
+                .add(cover.id)
+                .add(TimeUnit.MILLISECONDS.toSeconds(cover.lastModified))
+        }
+        return cursor
+    }
+
+    override fun getMediaUri(id: Long): Uri {
+        val path = synchronized(ids) { paths[id] }
+        return if (path != null) Uri.fromFile(File(path)) else Uri.EMPTY
+    }
+
+    private fun MediaFile.matches(mediaTypes: Array<out String>?): Boolean =
+        mediaTypes.isNullOrEmpty() || mimeType in mediaTypes
+
+    /**
+     * Walk the roots, listing only the directories changed since the last scan
+     */
+    @Synchronized
+    private fun scan(cancellationSignal: CancellationSignal?): List<Bucket> =
+        trace("Louvre:DirectorySource.scan") { scanRoots(cancellationSignal) }
+
+    private fun scanRoots(cancellationSignal: CancellationSignal?): List<Bucket> {
+        val previous = directories
+        val scanned = HashMap<File, Directory>()
+        val filesByRoot = roots.associateWith { ArrayList<MediaFile>() }
+        val completion = ExecutorCompletionService<Triple<File, File, Directory>>(mediaExecutor)
+        var pending = 0
+        fun submit(root: File, directory: File) {
+            completion.submit { Triple(root, directory, scanDirectory(directory, previous[directory])) }
+            pending++
+        }
+        roots.forEach { submit(it, it) }
+        while (pending > 0) {
+            cancellationSignal?.throwIfCanceled()
+            val (root, file, directory) = completion.take().get()
+            pending--
+            scanned[file] = directory
+            filesByRoot.getValue(root).addAll(directory.files)
+            directory.directories.forEach { submit(root, it) }
+        }
+        directories = scanned
+        retainIds(scanned.values)
+        return roots.mapIndexed { index, root -> Bucket(index + 1L, root.name, filesByRoot.getValue(root)) }
+    }
+
+    /**
+     * Forget the ids of the files that were not found by the last scan, so deleted files don't pile up
+     */
+    private fun retainIds(directories: Collection<Directory>) {
+        val seen = HashSet<Long>()
+        directories.forEach { directory -> directory.files.mapTo(seen) { it.id } }
+        synchronized(ids) {
+            if (seen.size < paths.size) {
+                paths.keys.retainAll(seen)
+                ids.values.retainAll(seen)
+            }
+        }
+    }
+
+    private fun scanDirectory(directory: File, cached: Directory?): Directory {
+        val lastModified = directory.lastModified()
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached
+        }
+        val files = ArrayList<MediaFile>()
+        val directories = ArrayList<File>()
+        directory.listFiles()?.forEach { file ->
+            if (file.isDirectory) {
+                directories.add(file)
+            } else {
+                val mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(file.extension.toLowerCase(Locale.ROOT))
+                if (mimeType != null && mimeType.startsWith("image/")) {
+                    files.add(MediaFile(obtainId(file.path), file.name, mimeType, file.lastModified()))
+                }
+            }
+        }
+        return Directory(lastModified, files, directories)
+    }
+
+    /**
+     * The id of a file is the hash of its path, so it does not depend on the order the parallel scan finds it,
+     * and the persisted placeholder colors, viewport and selection still match it after the process dies.
+     * The rare paths whose hashes collide take the next free ids, which are only kept while this source lives.
+     */
+    private fun obtainId(path: String): Long = synchronized(ids) {
+        ids[path] ?: run {
+            var id = hash(path)
+            while (id in paths) {
+                id = if (id == MAX_ID) 1 else id + 1
+            }
+            ids[path] = id
+            paths[id] = path
+            id
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the path, folded into an id from 1 to [MAX_ID]
+     */
+    private fun hash(path: String): Long {
+        var hash = FNV_OFFSET_BASIS
+        for (char in path) {
+            hash = (hash xor char.toLong()) * FNV_PRIME
+        }
+        return (((hash ushr 56) xor hash) and MAX_ID).coerceAtLeast(1)
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import androidx.recyclerview.widget.DiffUtil
+
+private const val MAX_CHANGED_ITEMS = 2000
+
+/**
+ * [DiffUtil.Callback] matching items by their stable ids.
+ * Items with the same id have the same content unless their versions differ, e.g. the date of a bucket cover.
+ */
+class IdDiffCallback(
+    private val oldIds: LongArray,
+    private val newIds: LongArray,
+    private val oldVersions: LongArray?,
+    private val newVersions: LongArray?
+) : DiffUtil.Callback() {
+
+    override fun getOldListSize(): Int = oldIds.size
+
+    override fun getNewListSize(): Int = newIds.size
+
+    override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+        oldIds[oldItemPosition] == newIds[newItemPosition]
+
+    override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+        oldVersions == null || newVersions == null || oldVersions[oldItemPosition] == newVersions[newItemPosition]
+
+    companion object {
+
+        /**
+         * The diff runs in O(N + D²), so it is skipped when the unchanged head and tail
+         * leave too many items in between.
+         *
+         * @return The diff or null if a full refresh is cheaper
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun calculateDiff(
+            oldIds: LongArray,
+            newIds: LongArray,
+            oldVersions: LongArray? = null,
+            newVersions: LongArray? = null
+        ): DiffUtil.DiffResult? {
+            val minSize = minOf(oldIds.size, newIds.size)
+            var head = 0
+            while (head < minSize && oldIds[head] == newIds[head]) head++
+            var tail = 0
+            while (tail < minSize - head && oldIds[oldIds.size - 1 - tail] == newIds[newIds.size - 1 - tail]) tail++
+            if (oldIds.size + newIds.size - (head + tail) * 2 > MAX_CHANGED_ITEMS) {
+                return null
+            }
+            return DiffUtil.calculateDiff(IdDiffCallback(oldIds, newIds, oldVersions, newVersions), false)
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.os.CancellationSignal
+import androidx.core.os.OperationCanceledException
+import androidx.loader.content.CursorLoader
+import com.andremion.louvre.util.Metrics
+
+/**
+ * [CursorLoader] that runs the given query against the [MediaSource]s, traces it and reports its duration
+ * and row count to [Metrics], as the bucket list query or as the media query of [bucketId] when there is one.
+ *
+ * It keeps the cancellation and content observation of [CursorLoader], for cursors that may come from several sources.
+ */
+internal open class MeasuredCursorLoader(
+    context: Context,
+    private val bucketId: Long?,
+    private val query: (Context, CancellationSignal) -> Cursor?
+) : CursorLoader(context) {
+
+    private val observer = ForceLoadContentObserver()
+    @Volatile
+    private var cancellationSignal: CancellationSignal? = null
+
+    override fun loadInBackground(): Cursor? {
+        if (isLoadInBackgroundCanceled) {
+            throw OperationCanceledException()
+        }
+        val startTime = Metrics.now()
+        val signal = CancellationSignal()
+        cancellationSignal = signal
+        try {
+            val cursor = trace("Louvre:query") { query(context, signal) }
+            cursor?.let {
+                try {
+                    // Fill the first cursor window while in background
+                    it.count
+                    it.registerContentObserver(observer)
+                } catch (e: RuntimeException) {
+                    it.close()
+                    throw e
+                }
+            }
+            val rowCount = cursor?.count ?: 0
+            if (bucketId == null) {
+                Metrics.onBucketsQueryFinished(startTime, rowCount)
+            } else {
+                Metrics.onMediaQueryFinished(bucketId, startTime, rowCount)
+            }
+            return cursor
+        } catch (e: android.os.OperationCanceledException) {
+            // The loader only expects the compat exception
+            throw OperationCanceledException()
+        } finally {
+            cancellationSignal = null
+        }
+    }
+
+    override fun cancelLoadInBackground() {
+        super.cancelLoadInBackground()
+        cancellationSignal?.cancel()
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.os.CancellationSignal
+import android.provider.MediaStore
+import androidx.recyclerview.widget.DiffUtil
+import com.andremion.louvre.core.DateIndex
+
+/**
+ * Media [Cursor] with some indexes built in background by [MediaCursorLoader].
+ *
+ * @property ids The media id of every row
+ * @property previousIds The ids of the previous data delivered by the same loader, if any
+ * @property diff The changes from [previousIds] to [ids], if they are few enough to be worth dispatching
+ */
+class MediaCursor internal constructor(
+    cursor: Cursor,
+    val dateIndex: DateIndex,
+    val ids: LongArray,
+    val previousIds: LongArray?,
+    val diff: DiffUtil.DiffResult?
+) : CursorWrapper(cursor)
+
+/**
+ * [MeasuredCursorLoader] that delivers a [MediaCursor].
+ */
+internal class MediaCursorLoader(
+    context: Context,
+    bucketId: Long,
+    query: (Context, CancellationSignal) -> Cursor?
+) : MeasuredCursorLoader(context, bucketId, query) {
+
+    @Volatile
+    private var previousIds: LongArray? = null
+
+    override fun loadInBackground(): Cursor? =
+        super.loadInBackground()?.let { cursor ->
+            val ids = LongArray(cursor.count)
+            val dates = LongArray(cursor.count)
+            trace("Louvre:readColumns") { readColumns(cursor, ids, dates) }
+            val previousIds = previousIds
+            val diff = previousIds?.let { trace("Louvre:calculateDiff") { IdDiffCallback.calculateDiff(it, ids) } }
+            this.previousIds = ids
+            MediaCursor(cursor, DateIndex(dates), ids, previousIds, diff)
+        }
+
+    /**
+     * Read the ids and dates of all rows in a single pass, before the cursor is shared with the UI.
+     * The rows of several sources are read from each source and merged, instead of through the merged cursor.
+     */
+    private fun readColumns(cursor: Cursor, ids: LongArray, dates: LongArray) {
+        if (cursor is MergedMediaCursor) {
+            cursor.readColumns(ids, dates)
+            return
+        }
+        val idColumn = cursor.getColumnIndex(MediaStore.Images.Media._ID)
+        val dateColumn = cursor.getColumnIndex(MediaStore.Images.Media.DATE_TAKEN)
+        for (position in ids.indices) {
+            cursor.moveToPosition(position)
+            ids[position] = cursor.getLong(idColumn)
+            if (dateColumn >= 0) {
+                dates[position] = cursor.getLong(dateColumn)
+            }
+        }
+        cursor.moveToPosition(-1)
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+private const val KEEP_ALIVE_SECONDS = 1L
+
+/**
+ * Pool of one thread per core for the blocking work of the media sources, like the queries and the file listings.
+ * The threads finish once idle, so it costs nothing while the picker is closed.
+ */
+internal val mediaExecutor: ExecutorService = Runtime.getRuntime().availableProcessors().let { threads ->
+    ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, LinkedBlockingQueue())
+        .apply { allowCoreThreadTimeOut(true) }
+}
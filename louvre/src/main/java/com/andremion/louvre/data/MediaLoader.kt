@@ -24,17 +24,19 @@ import android.provider.MediaStore
 import androidx.annotation.IntRange
 import androidx.fragment.app.FragmentActivity
 import androidx.loader.app.LoaderManager
-import androidx.loader.content.CursorLoader
 import androidx.loader.content.Loader
 import com.andremion.louvre.R
 
-private const val TIME_LOADER = 0
-private const val BUCKET_LOADER = 1
-private const val MEDIA_LOADER = 2
+private const val BUCKET_LOADER = 0
+private const val MEDIA_LOADER = 1 // First id of the media loaders, one per cached bucket
+private const val MAX_CACHED_BUCKETS = 4
 private const val ARG_BUCKET_ID = MediaStore.Images.Media.BUCKET_ID
 
 /**
  * [Loader] for media and bucket data
+ *
+ * The last [MAX_CACHED_BUCKETS] visited buckets keep their own loader alive, so going back to one of them
+ * delivers its data right away while it is revalidated in background.
  */
 class MediaLoader : LoaderManager.LoaderCallbacks<Cursor?> {
 
@@ -45,40 +47,36 @@ class MediaLoader : LoaderManager.LoaderCallbacks<Cursor?> {
 
     private var activity: FragmentActivity? = null
     private var callbacks: Callbacks? = null
-    private var typeFilter = "1" // Means all media type.
+    private var mediaTypes: Array<String>? = null
+    private var currentLoaderId = -1
+    // Media loader ids by bucket id, in access order
+    private val mediaLoaderIds = LinkedHashMap<Long, Int>(MAX_CACHED_BUCKETS, 0.75f, true)
 
     override fun onCreateLoader(id: Int, args: Bundle?): Loader<Cursor?> =
         ensureActivityAttached().let { activity ->
             when (id) {
-                TIME_LOADER -> CursorLoader(
-                    activity,
-                    GALLERY_URI,
-                    IMAGE_PROJECTION,
-                    typeFilter,
-                    null,
-                    MEDIA_SORT_ORDER
-                )
-                BUCKET_LOADER -> CursorLoader(
-                    activity,
-                    GALLERY_URI,
-                    BUCKET_PROJECTION,
-                    "$typeFilter AND $BUCKET_SELECTION",
-                    null,
-                    BUCKET_SORT_ORDER
-                )
-                // id == MEDIA_LOADER
-                else -> CursorLoader(
-                    activity,
-                    GALLERY_URI,
-                    IMAGE_PROJECTION,
-                    "${MediaStore.Images.Media.BUCKET_ID}=${args?.getLong(ARG_BUCKET_ID) ?: 0} AND $typeFilter",
-                    null,
-                    MEDIA_SORT_ORDER
-                )
+                BUCKET_LOADER -> {
+                    val mediaTypes = mediaTypes
+                    MeasuredCursorLoader(activity, null) { context, signal ->
+                        MediaSources.queryBuckets(context, mediaTypes, signal)
+                    }
+                }
+                // id >= MEDIA_LOADER
+                else -> {
+                    val bucketId = args?.getLong(ARG_BUCKET_ID) ?: ALL_MEDIA_BUCKET_ID
+                    val mediaTypes = mediaTypes
+                    MediaCursorLoader(activity, bucketId) { context, signal ->
+                        MediaSources.queryMedia(context, bucketId, mediaTypes, signal)
+                    }
+                }
             }
         }
 
     override fun onLoadFinished(loader: Loader<Cursor?>, data: Cursor?) {
+        if (loader.id != currentLoaderId) {
+            // A cached loader was reloaded in background. It will be delivered when its bucket is displayed again.
+            return
+        }
         callbacks?.let { callbacks ->
             if (loader.id == BUCKET_LOADER) {
                 callbacks.onBucketLoadFinished(finishUpBuckets(data))
@@ -103,27 +101,58 @@ class MediaLoader : LoaderManager.LoaderCallbacks<Cursor?> {
     }
 
     fun setMediaTypes(mediaTypes: Array<String>) {
-        val filter = mediaTypes.joinToString { "'$it'" }
-        if (filter.isNotEmpty()) {
-            typeFilter = "${MediaStore.Images.Media.MIME_TYPE} IN ($filter)"
-        }
+        this.mediaTypes = mediaTypes
     }
 
     fun loadBuckets() {
-        LoaderManager.getInstance(ensureActivityAttached())
-            .restartLoader(BUCKET_LOADER, null, this)
+        load(BUCKET_LOADER, null)
     }
 
     fun loadByBucket(@IntRange(from = 0) bucketId: Long) {
-        ensureActivityAttached().let { activity ->
-            if (ALL_MEDIA_BUCKET_ID == bucketId) {
-                LoaderManager.getInstance(activity).restartLoader(TIME_LOADER, null, this)
-            } else {
-                val args = Bundle()
-                args.putLong(ARG_BUCKET_ID, bucketId)
-                LoaderManager.getInstance(activity).restartLoader(MEDIA_LOADER, args, this)
-            }
+        val loaderId = mediaLoaderIds[bucketId] ?: obtainMediaLoaderId().also { mediaLoaderIds[bucketId] = it }
+        val args = Bundle()
+        args.putLong(ARG_BUCKET_ID, bucketId)
+        load(loaderId, args)
+    }
+
+    /**
+     * Attach to the current loader again, after a configuration change for instance.
+     * Its data is delivered as soon as the activity is started, with no query.
+     */
+    fun reattach() {
+        if (hasLoaded()) {
+            LoaderManager.getInstance(ensureActivityAttached()).initLoader(currentLoaderId, null, this)
+        }
+    }
+
+    /**
+     * @return If any data was requested, otherwise there is nothing to attach to, like after the process was killed
+     */
+    fun hasLoaded(): Boolean = currentLoaderId >= 0
+
+    /**
+     * Deliver the data of an existing loader right away and revalidate it in background,
+     * or create the loader if there is no one yet.
+     */
+    private fun load(loaderId: Int, args: Bundle?) {
+        val loaderManager = LoaderManager.getInstance(ensureActivityAttached())
+        currentLoaderId = loaderId
+        val loader = loaderManager.getLoader<Cursor?>(loaderId)
+        loaderManager.initLoader(loaderId, args, this)
+        loader?.onContentChanged()
+    }
+
+    /**
+     * Evict the least recently used bucket if the cache is full and reuse its loader id
+     */
+    private fun obtainMediaLoaderId(): Int {
+        if (mediaLoaderIds.size < MAX_CACHED_BUCKETS) {
+            return MEDIA_LOADER + mediaLoaderIds.size
         }
+        val eldest = mediaLoaderIds.entries.first()
+        mediaLoaderIds.remove(eldest.key)
+        LoaderManager.getInstance(ensureActivityAttached()).destroyLoader(eldest.value)
+        return eldest.value
     }
 
     /**
@@ -132,14 +161,12 @@ class MediaLoader : LoaderManager.LoaderCallbacks<Cursor?> {
     private fun ensureActivityAttached(): FragmentActivity =
         requireNotNull(activity) { "The FragmentActivity was not attached!" }
 
-    private fun finishUpBuckets(cursor: Cursor?): Cursor? =
-        MergeCursor(
-            arrayOf(
-                addAllMediaBucketItem(cursor),
-                if (isAllowedAggregatedFunctions) cursor
-                else aggregateBuckets(cursor)
-            )
-        )
+    /**
+     * The buckets come aggregated by their [MediaSource]s, just the "All Media" item is left
+     */
+    private fun finishUpBuckets(cursor: Cursor?): Cursor? = trace("Louvre:finishUpBuckets") {
+        MergeCursor(arrayOf(addAllMediaBucketItem(cursor), cursor))
+    }
 
     /**
      * Add "All Media" item as the first row of bucket items.
@@ -147,52 +174,22 @@ class MediaLoader : LoaderManager.LoaderCallbacks<Cursor?> {
      * @param cursor The original data of all bucket items
      * @return The data with "All Media" item added
      */
-    private fun addAllMediaBucketItem(cursor: Cursor?): Cursor? =
+    private fun addAllMediaBucketItem(cursor: Cursor?): Cursor? = trace("Louvre:addAllMediaBucketItem") {
         cursor?.run {
             if (!moveToPosition(0)) return null
             val id = ALL_MEDIA_BUCKET_ID
             val label = ensureActivityAttached().getString(R.string.activity_gallery_bucket_all_media)
-            val data = getString(getColumnIndex(MediaStore.Images.Media.DATA))
+            val coverId = getLong(getColumnIndex(MediaStore.Images.Media._ID))
+            val dateModified = getLong(getColumnIndex(MediaStore.Images.Media.DATE_MODIFIED))
             MatrixCursor(BUCKET_PROJECTION).apply {
                 newRow()
                     .add(id)
                     .add(label)
-                    .add(data)
+                    .add(coverId)
+                    .add(dateModified)
             }
         }
-
-    /**
-     * Since we are not allowed to use SQL aggregation functions we need to do that on code
-     *
-     * @param cursor The original data of all bucket items
-     * @return The data aggregated by buckets
-     */
-    private fun aggregateBuckets(cursor: Cursor?): Cursor? =
-        cursor?.run {
-            val idIndex = getColumnIndex(MediaStore.Images.Media.BUCKET_ID)
-            val labelIndex = getColumnIndex(MediaStore.Images.Media.BUCKET_DISPLAY_NAME)
-            val dataIndex = getColumnIndex(MediaStore.Images.Media.DATA)
-
-            val aggregatedBucket = MatrixCursor(BUCKET_PROJECTION)
-            var previousId = 0L
-
-            for (position in 0 until cursor.count) {
-                moveToPosition(position)
-                val id = getLong(idIndex)
-                val label = getString(labelIndex)
-                val data = getString(dataIndex)
-
-                if (id != previousId) {
-                    aggregatedBucket.newRow()
-                        .add(id)
-                        .add(label)
-                        .add(data)
-                }
-                previousId = id
-            }
-
-            aggregatedBucket
-        }
+    }
 }
 
 internal val isAllowedAggregatedFunctions = Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
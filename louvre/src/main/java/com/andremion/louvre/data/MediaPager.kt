@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.ContentResolver
+import android.content.ContentUris
+import android.database.Cursor
+import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.os.CancellationSignal
+import android.provider.MediaStore
+import androidx.annotation.IntRange
+import androidx.annotation.WorkerThread
+
+private const val DATE_TAKEN = MediaStore.Images.Media.DATE_TAKEN
+private const val ID = MediaStore.Images.Media._ID
+// The id breaks the ties between media taken at the same time, so every item has a single place
+private const val PAGE_SORT_ORDER = "$DATE_TAKEN DESC, $ID DESC"
+
+/**
+ * A media item found by [MediaPager]
+ */
+data class MediaItem(
+    val id: Long,
+    val bucketId: Long,
+    val displayName: String?,
+    /**
+     * The date taken in milliseconds, or 0 if unknown
+     */
+    val dateTaken: Long
+) {
+    val uri: Uri get() = ContentUris.withAppendedId(GALLERY_URI, id)
+}
+
+/**
+ * Query the [MediaStore] media newest first, a page at a time, with the same type filter and bucket semantics of the picker.
+ *
+ * Each page starts right after the date and id of the last item of the previous page (keyset pagination)
+ * instead of at an offset, so every page costs the same however deep it is, and no more than a page
+ * is ever held in memory. Media added meanwhile do not shift the next pages.
+ *
+ * The queries block, so they must run in background. Create it through [com.andremion.louvre.Louvre.query].
+ */
+class MediaPager internal constructor(
+    private val contentResolver: ContentResolver,
+    bucketId: Long,
+    @IntRange(from = 1) private val pageSize: Int,
+    mediaTypes: Array<out String>?
+) {
+
+    private val selection = bucketSelection(bucketId, typeSelection(mediaTypes))
+    private var hasNextPage = true
+    // The keys of the last item, media ids start at 1 so 0 means there is no page yet
+    private var lastId = 0L
+    private var lastDateTaken: Long? = null
+
+    fun hasNextPage(): Boolean = hasNextPage
+
+    /**
+     * Query the next page.
+     *
+     * @param cancellationSignal To cancel the query in progress, which then throws [android.os.OperationCanceledException]
+     * @return The next items, fewer than the page size or none when there are no more
+     */
+    @WorkerThread
+    @JvmOverloads
+    fun nextPage(cancellationSignal: CancellationSignal? = null): List<MediaItem> {
+        if (!hasNextPage) return emptyList()
+        val items = trace("Louvre:MediaPager.nextPage") {
+            query(cancellationSignal)?.use { cursor -> read(cursor) } ?: emptyList()
+        }
+        hasNextPage = items.size == pageSize
+        return items
+    }
+
+    private fun query(cancellationSignal: CancellationSignal?): Cursor? {
+        val lastDateTaken = lastDateTaken
+        val pageSelection: String
+        val pageSelectionArgs: Array<String>?
+        when {
+            lastId == 0L -> {
+                pageSelection = selection
+                pageSelectionArgs = null
+            }
+            // Media with no date come last, ordered by id only
+            lastDateTaken == null -> {
+                pageSelection = "($selection) AND $DATE_TAKEN IS NULL AND $ID < ?"
+                pageSelectionArgs = arrayOf(lastId.toString())
+            }
+            else -> {
+                pageSelection = "($selection) AND ($DATE_TAKEN < ? OR ($DATE_TAKEN = ? AND $ID < ?) OR $DATE_TAKEN IS NULL)"
+                pageSelectionArgs = arrayOf(lastDateTaken.toString(), lastDateTaken.toString(), lastId.toString())
+            }
+        }
+        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // A LIMIT clause in the sort order is rejected from Android R on
+            val queryArgs = Bundle().apply {
+                putString(ContentResolver.QUERY_ARG_SQL_SELECTION, pageSelection)
+                putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, pageSelectionArgs)
+                putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, PAGE_SORT_ORDER)
+                putInt(ContentResolver.QUERY_ARG_LIMIT, pageSize)
+            }
+            contentResolver.query(GALLERY_URI, IMAGE_PROJECTION, queryArgs, cancellationSignal)
+        } else {
+            contentResolver.query(
+                GALLERY_URI,
+                IMAGE_PROJECTION,
+                pageSelection,
+                pageSelectionArgs,
+                "$PAGE_SORT_ORDER LIMIT $pageSize",
+                cancellationSignal
+            )
+        }
+    }
+
+    private fun read(cursor: Cursor): List<MediaItem> {
+        val idColumn = cursor.getColumnIndex(ID)
+        val bucketIdColumn = cursor.getColumnIndex(MediaStore.Images.Media.BUCKET_ID)
+        val displayNameColumn = cursor.getColumnIndex(MediaStore.Images.Media.DISPLAY_NAME)
+        val dateTakenColumn = cursor.getColumnIndex(DATE_TAKEN)
+        val items = ArrayList<MediaItem>(cursor.count)
+        while (cursor.moveToNext()) {
+            items.add(
+                MediaItem(
+                    cursor.getLong(idColumn),
+                    cursor.getLong(bucketIdColumn),
+                    cursor.getString(displayNameColumn),
+                    cursor.getLong(dateTakenColumn)
+                )
+            )
+        }
+        if (cursor.moveToLast()) {
+            lastId = cursor.getLong(idColumn)
+            lastDateTaken = if (cursor.isNull(dateTakenColumn)) null else cursor.getLong(dateTakenColumn)
+        }
+        return items
+    }
+}
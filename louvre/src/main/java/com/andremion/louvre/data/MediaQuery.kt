@@ -13,13 +13,15 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+@file:JvmName("MediaQuery")
+
 package com.andremion.louvre.data
 
 import android.net.Uri
 import android.provider.MediaStore
 
 /**
- * Helper properties used by [MediaLoader]
+ * Helper properties used by [MediaLoader] and [MediaPager]
  */
 
 internal val GALLERY_URI: Uri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI
@@ -27,15 +29,46 @@ internal val IMAGE_PROJECTION: Array<String> = arrayOf(
     MediaStore.Images.Media._ID,
     MediaStore.Images.Media.BUCKET_ID,
     MediaStore.Images.Media.DISPLAY_NAME,
-    MediaStore.Images.Media.DATA
+    MediaStore.Images.Media.DATE_TAKEN
 )
-internal const val ALL_MEDIA_BUCKET_ID: Long = 0L
+const val ALL_MEDIA_BUCKET_ID: Long = 0L
 internal const val MEDIA_SORT_ORDER: String = "${MediaStore.Images.Media.DATE_TAKEN} DESC"
+// The _ID of a bucket is the id of its cover
 internal val BUCKET_PROJECTION: Array<String> = arrayOf(
     MediaStore.Images.Media.BUCKET_ID,
     MediaStore.Images.Media.BUCKET_DISPLAY_NAME,
-    MediaStore.Images.Media.DATA
+    MediaStore.Images.Media._ID,
+    MediaStore.Images.Media.DATE_MODIFIED
 )
+// With a single MAX() in an aggregate query, SQLite takes the other columns of each group from the row holding
+// the maximum, so before Q the cover and its modification date are the ones of the newest item of the bucket,
+// like the first row of each bucket from Q on. Otherwise they would come from an arbitrary row of the group.
+internal val BUCKET_QUERY_PROJECTION: Array<String> =
+    if (isAllowedAggregatedFunctions) BUCKET_PROJECTION + "MAX(${MediaStore.Images.Media.DATE_TAKEN})"
+    else BUCKET_PROJECTION
+
+/**
+ * Selection of the media of the given MIME types, or of every media type if there is none
+ */
+internal fun typeSelection(mediaTypes: Array<out String>?): String {
+    val filter = mediaTypes?.joinToString { "'$it'" }
+    return if (filter.isNullOrEmpty()) "1" // Means all media type.
+    else "${MediaStore.Images.Media.MIME_TYPE} IN ($filter)"
+}
+
+/**
+ * Selection of the media of the given bucket, or of every bucket for [ALL_MEDIA_BUCKET_ID]
+ */
+internal fun bucketSelection(bucketId: Long, typeSelection: String): String =
+    if (ALL_MEDIA_BUCKET_ID == bucketId) typeSelection
+    else "${MediaStore.Images.Media.BUCKET_ID}=$bucketId AND $typeSelection"
+
+/**
+ * The [Uri] that identifies a media item, given by its [MediaSource].
+ * The [MediaStore] ones are content Uris opened through the [android.content.ContentResolver],
+ * so they work under scoped storage as well.
+ */
+fun getMediaUri(id: Long): Uri = MediaSources.getMediaUri(id)
 
 // The template for "WHERE" parameter is like:
 //    SELECT ... FROM ... WHERE (%s)
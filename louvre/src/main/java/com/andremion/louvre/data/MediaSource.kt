@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.ContentUris
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.database.MergeCursor
+import android.net.Uri
+import android.os.Build
+import android.os.CancellationSignal
+import android.provider.MediaStore
+import androidx.annotation.WorkerThread
+import com.andremion.louvre.core.BucketAggregator
+import com.andremion.louvre.util.Metrics
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+
+/**
+ * Where the picker finds media, set by [com.andremion.louvre.Louvre.setMediaSources].
+ *
+ * The media of every source are merged by date in the "All Media" bucket, and each source adds its own buckets.
+ * The media and bucket ids only need to be unique within a source, from 0 until 2^56 unless it is the first source.
+ */
+interface MediaSource {
+
+    /**
+     * @param bucketId   One of the buckets of this source, or [ALL_MEDIA_BUCKET_ID] for every bucket of this source
+     * @param mediaTypes The MIME types to query, or every type if null
+     * @return The media sorted by [MediaStore.Images.Media.DATE_TAKEN] descending, with at least the columns
+     * [MediaStore.Images.Media._ID], [MediaStore.Images.Media.BUCKET_ID], [MediaStore.Images.Media.DISPLAY_NAME]
+     * and [MediaStore.Images.Media.DATE_TAKEN]
+     */
+    @WorkerThread
+    fun queryMedia(
+        context: Context,
+        bucketId: Long,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor?
+
+    /**
+     * @param mediaTypes The MIME types to query, or every type if null
+     * @return One row per bucket with the columns [MediaStore.Images.Media.BUCKET_ID],
+     * [MediaStore.Images.Media.BUCKET_DISPLAY_NAME], [MediaStore.Images.Media._ID] of its cover
+     * and [MediaStore.Images.Media.DATE_MODIFIED]
+     */
+    @WorkerThread
+    fun queryBuckets(
+        context: Context,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor?
+
+    /**
+     * @return The [Uri] to load the media with the given id of this source
+     */
+    fun getMediaUri(id: Long): Uri
+}
+
+/**
+ * The [MediaStore] images of the external volumes, the default [MediaSource].
+ *
+ * On Q and later each volume, like an SD card, is queried at the same time and their media are merged by date,
+ * so a slow volume doesn't add its latency to the others. The ids are unique across the volumes.
+ */
+open class MediaStoreSource : MediaSource {
+
+    override fun queryMedia(
+        context: Context,
+        bucketId: Long,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        val cursors = queryVolumes(context) { uri ->
+            context.contentResolver.query(
+                uri,
+                IMAGE_PROJECTION,
+                bucketSelection(bucketId, typeSelection(mediaTypes)),
+                null,
+                MEDIA_SORT_ORDER,
+                cancellationSignal
+            )
+        }
+        return when (cursors.size) {
+            0 -> null
+            1 -> cursors[0]
+            else -> MergedMediaCursor(cursors)
+        }
+    }
+
+    override fun queryBuckets(
+        context: Context,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        val cursors = queryVolumes(context) { uri ->
+            val cursor = context.contentResolver.query(
+                uri,
+                BUCKET_QUERY_PROJECTION,
+                "${typeSelection(mediaTypes)} AND $BUCKET_SELECTION",
+                null,
+                BUCKET_SORT_ORDER,
+                cancellationSignal
+            )
+            if (isAllowedAggregatedFunctions || cursor == null) {
+                cursor
+            } else {
+                cursor.use { aggregateBuckets(it) }.apply {
+                    // The rows are copied, so changes are observed on the aggregated cursor instead
+                    setNotificationUri(context.contentResolver, GALLERY_URI)
+                }
+            }
+        }
+        return when (cursors.size) {
+            0 -> null
+            1 -> cursors[0]
+            else -> MergeCursor(cursors)
+        }
+    }
+
+    override fun getMediaUri(id: Long): Uri = ContentUris.withAppendedId(GALLERY_URI, id)
+
+    /**
+     * Since we are not allowed to use SQL aggregation functions we need to do that on code.
+     * Only the bucket ids are read from every row, the other columns just from the first row of each bucket.
+     *
+     * @param cursor The original data of all bucket items
+     * @return The data aggregated by buckets
+     */
+    private fun aggregateBuckets(cursor: Cursor): MatrixCursor = trace("Louvre:aggregateBuckets") {
+        val startTime = Metrics.now()
+        with(cursor) {
+            val idIndex = getColumnIndex(MediaStore.Images.Media.BUCKET_ID)
+            val labelIndex = getColumnIndex(MediaStore.Images.Media.BUCKET_DISPLAY_NAME)
+            val coverIdIndex = getColumnIndex(MediaStore.Images.Media._ID)
+            val dateModifiedIndex = getColumnIndex(MediaStore.Images.Media.DATE_MODIFIED)
+
+            val bucketIds = LongArray(count)
+            for (position in bucketIds.indices) {
+                moveToPosition(position)
+                bucketIds[position] = getLong(idIndex)
+            }
+
+            val aggregatedBucket = MatrixCursor(BUCKET_PROJECTION)
+            for (position in BucketAggregator.aggregate(bucketIds)) {
+                moveToPosition(position)
+                aggregatedBucket.newRow()
+                    .add(bucketIds[position])
+                    .add(getString(labelIndex))
+                    .add(getLong(coverIdIndex))
+                    .add(getLong(dateModifiedIndex))
+            }
+
+            aggregatedBucket
+        }.also { Metrics.onBucketsAggregated(startTime, it.count) }
+    }
+
+    /**
+     * Run the query for the content Uri of each external volume in parallel,
+     * or just for [GALLERY_URI] before Q or when there is a single volume.
+     *
+     * @return The non null cursors of the volumes
+     */
+    private fun queryVolumes(context: Context, query: (Uri) -> Cursor?): Array<Cursor> {
+        val volumes = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            MediaStore.getExternalVolumeNames(context)
+        } else {
+            emptySet()
+        }
+        if (volumes.size <= 1) {
+            return listOfNotNull(query(GALLERY_URI)).toTypedArray()
+        }
+        val futures = volumes.map { volume ->
+            mediaExecutor.submit(Callable { query(MediaStore.Images.Media.getContentUri(volume)) })
+        }
+        try {
+            return futures.mapNotNull { it.get() }.toTypedArray()
+        } catch (e: Exception) {
+            // Don't leak the cursors of the volumes that did answer
+            for (future in futures) {
+                try {
+                    future.get()?.close()
+                } catch (ignored: Exception) {
+                }
+            }
+            throw (e as? ExecutionException)?.cause ?: e
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.database.MergeCursor
+import android.net.Uri
+import android.os.CancellationSignal
+import androidx.annotation.WorkerThread
+
+private const val SOURCE_SHIFT = 56
+private const val LOCAL_ID_MASK = (1L shl SOURCE_SHIFT) - 1
+private const val MAX_SOURCES = 127
+
+/**
+ * The [MediaSource]s of the picker.
+ *
+ * The media and bucket ids of each source are moved into their own range, by the source index in the high bits,
+ * so they are unique across sources. The ids of the first source are kept as they are, so they may be negative,
+ * like the [MediaStore][android.provider.MediaStore] bucket ids. The other sources must use ids
+ * from 0 until 2^56.
+ */
+object MediaSources {
+
+    @Volatile
+    private var sources: Array<MediaSource> = arrayOf(MediaStoreSource())
+
+    @JvmStatic
+    fun set(vararg sources: MediaSource) {
+        require(sources.isNotEmpty() && sources.size <= MAX_SOURCES) { "Set from 1 to $MAX_SOURCES media sources" }
+        this.sources = arrayOf(*sources)
+    }
+
+    internal fun toGlobalId(sourceIndex: Int, id: Long): Long = (sourceIndex.toLong() shl SOURCE_SHIFT) or id
+
+    private fun sourceIndexOf(id: Long): Int = if (id < 0) 0 else (id ushr SOURCE_SHIFT).toInt()
+
+    private fun toLocalId(id: Long): Long = if (id < 0) id else id and LOCAL_ID_MASK
+
+    /**
+     * @return The [Uri] of the media with the given picker-wide id,
+     * or [Uri.EMPTY] if it comes from a source that is no longer set
+     */
+    internal fun getMediaUri(id: Long): Uri {
+        val sources = sources
+        val index = sourceIndexOf(id)
+        return if (index < sources.size) sources[index].getMediaUri(toLocalId(id)) else Uri.EMPTY
+    }
+
+    /**
+     * @return The media of the source that owns the bucket, or of every source merged by date, newest first,
+     * for [ALL_MEDIA_BUCKET_ID]
+     */
+    @WorkerThread
+    internal fun queryMedia(
+        context: Context,
+        bucketId: Long,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        if (bucketId != ALL_MEDIA_BUCKET_ID) {
+            val sources = sources
+            val index = sourceIndexOf(bucketId)
+            if (index >= sources.size) return null
+            val cursor = sources[index].queryMedia(context, toLocalId(bucketId), mediaTypes, cancellationSignal)
+            return if (cursor == null || index == 0) cursor else NamespacedCursor(cursor, index)
+        }
+        val cursors = query { source -> source.queryMedia(context, bucketId, mediaTypes, cancellationSignal) }
+        return when (cursors.size) {
+            0 -> null
+            1 -> cursors[0]
+            else -> MergedMediaCursor(cursors)
+        }
+    }
+
+    /**
+     * @return The buckets of every source, one after the other
+     */
+    @WorkerThread
+    internal fun queryBuckets(
+        context: Context,
+        mediaTypes: Array<out String>?,
+        cancellationSignal: CancellationSignal?
+    ): Cursor? {
+        val cursors = query { source -> source.queryBuckets(context, mediaTypes, cancellationSignal) }
+        return when (cursors.size) {
+            0 -> null
+            1 -> cursors[0]
+            else -> MergeCursor(cursors)
+        }
+    }
+
+    private inline fun query(query: (MediaSource) -> Cursor?): Array<Cursor> {
+        val sources = sources
+        val cursors = ArrayList<Cursor>(sources.size)
+        try {
+            sources.forEachIndexed { index, source ->
+                query(source)?.let { cursor ->
+                    cursors.add(if (index == 0) cursor else NamespacedCursor(cursor, index))
+                }
+            }
+        } catch (e: RuntimeException) {
+            cursors.forEach { it.close() }
+            throw e
+        }
+        return cursors.toTypedArray()
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.database.AbstractCursor
+import android.database.ContentObserver
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.database.DataSetObserver
+import android.provider.MediaStore
+
+private const val INITIAL_CAPACITY = 256
+
+/**
+ * Rewrite the [MediaStore.Images.Media._ID] and [MediaStore.Images.Media.BUCKET_ID] of the rows of a [MediaSource]
+ * into the picker-wide id space.
+ *
+ * @see MediaSources.toGlobalId
+ */
+internal class NamespacedCursor(cursor: Cursor, private val sourceIndex: Int) : CursorWrapper(cursor) {
+
+    private val idColumn = cursor.getColumnIndex(MediaStore.Images.Media._ID)
+    private val bucketIdColumn = cursor.getColumnIndex(MediaStore.Images.Media.BUCKET_ID)
+
+    private fun isIdColumn(columnIndex: Int): Boolean =
+        columnIndex >= 0 && (columnIndex == idColumn || columnIndex == bucketIdColumn)
+
+    override fun getLong(columnIndex: Int): Long {
+        val value = super.getLong(columnIndex)
+        return if (isIdColumn(columnIndex)) MediaSources.toGlobalId(sourceIndex, value) else value
+    }
+
+    override fun getString(columnIndex: Int): String? =
+        if (isIdColumn(columnIndex)) getLong(columnIndex).toString() else super.getString(columnIndex)
+}
+
+/**
+ * Merge cursors sorted by [MediaStore.Images.Media.DATE_TAKEN] descending into a single cursor with the same order.
+ *
+ * The merge is lazy: rows are only compared up to the furthest position visited, one step of a k-way merge each,
+ * so a huge source costs only what is actually read. The columns are matched by name.
+ */
+internal class MergedMediaCursor(private val cursors: Array<Cursor>) : AbstractCursor() {
+
+    private val columnNames = cursors[0].columnNames
+    // The column index of every cursor for each merged column
+    private val columnMaps = Array(cursors.size) { index ->
+        IntArray(columnNames.size) { column -> cursors[index].getColumnIndex(columnNames[column]) }
+    }
+    private val dateColumns = IntArray(cursors.size) { cursors[it].getColumnIndex(MediaStore.Images.Media.DATE_TAKEN) }
+    private val counts = IntArray(cursors.size) { cursors[it].count }
+    private val totalCount = counts.sum()
+    // The next row to merge of every cursor, and its date
+    private val heads = IntArray(cursors.size)
+    private val headDates = LongArray(cursors.size) { readDate(it, 0) }
+    // The cursor and row of every merged position
+    private var sources = IntArray(minOf(totalCount, INITIAL_CAPACITY))
+    private var rows = IntArray(sources.size)
+    private var mergedCount = 0
+    private var current: Cursor? = null
+    private var currentColumns: IntArray? = null
+
+    override fun getCount(): Int = totalCount
+
+    override fun getColumnNames(): Array<String> = columnNames
+
+    override fun onMove(oldPosition: Int, newPosition: Int): Boolean {
+        mergeUpTo(newPosition)
+        val source = sources[newPosition]
+        current = cursors[source]
+        currentColumns = columnMaps[source]
+        return cursors[source].moveToPosition(rows[newPosition])
+    }
+
+    private fun mergeUpTo(position: Int) {
+        if (position < mergedCount) return
+        ensureCapacity(position + 1)
+        while (mergedCount <= position) {
+            var newest = -1
+            for (index in cursors.indices) {
+                if (heads[index] < counts[index] && (newest < 0 || headDates[index] > headDates[newest])) {
+                    newest = index
+                }
+            }
+            sources[mergedCount] = newest
+            rows[mergedCount] = heads[newest]
+            mergedCount++
+            heads[newest]++
+            headDates[newest] = readDate(newest, heads[newest])
+        }
+    }
+
+    /**
+     * Read the ids and dates of all rows for [MediaCursorLoader]. Each source is read once in its own order
+     * and their columns are merged in memory, so no date is compared through the cursors.
+     * The whole merge order is kept, so moving to any row afterwards doesn't merge anymore.
+     */
+    fun readColumns(ids: LongArray, dates: LongArray) {
+        val sourceIds = Array(cursors.size) { LongArray(counts[it]) }
+        val sourceDates = Array(cursors.size) { LongArray(counts[it]) }
+        for (index in cursors.indices) {
+            val cursor = cursors[index]
+            val idColumn = cursor.getColumnIndex(MediaStore.Images.Media._ID)
+            for (row in 0 until counts[index]) {
+                sourceIds[index][row] = if (cursor.moveToPosition(row)) cursor.getLong(idColumn) else 0
+                sourceDates[index][row] = readDate(index, row)
+            }
+        }
+        ensureCapacity(totalCount)
+        val heads = IntArray(cursors.size)
+        for (position in 0 until totalCount) {
+            var newest = -1
+            for (index in cursors.indices) {
+                if (heads[index] < counts[index] &&
+                    (newest < 0 || sourceDates[index][heads[index]] > sourceDates[newest][heads[newest]])
+                ) {
+                    newest = index
+                }
+            }
+            val row = heads[newest]++
+            sources[position] = newest
+            rows[position] = row
+            ids[position] = sourceIds[newest][row]
+            val date = sourceDates[newest][row]
+            // As read from a single cursor
+            dates[position] = if (date == Long.MIN_VALUE) 0 else date
+        }
+        mergedCount = totalCount
+    }
+
+    private fun readDate(index: Int, row: Int): Long {
+        val cursor = cursors[index]
+        if (row >= counts[index] || !cursor.moveToPosition(row)) return Long.MIN_VALUE
+        // Media with no date come last
+        return if (cursor.isNull(dateColumns[index])) Long.MIN_VALUE else cursor.getLong(dateColumns[index])
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity <= sources.size) return
+        val size = minOf(totalCount, maxOf(capacity, sources.size * 2))
+        sources = sources.copyOf(size)
+        rows = rows.copyOf(size)
+    }
+
+    private fun column(column: Int): Int = requireNotNull(currentColumns)[column]
+
+    override fun getString(column: Int): String? = requireNotNull(current).getString(column(column))
+
+    override fun getShort(column: Int): Short = requireNotNull(current).getShort(column(column))
+
+    override fun getInt(column: Int): Int = requireNotNull(current).getInt(column(column))
+
+    override fun getLong(column: Int): Long = requireNotNull(current).getLong(column(column))
+
+    override fun getFloat(column: Int): Float = requireNotNull(current).getFloat(column(column))
+
+    override fun getDouble(column: Int): Double = requireNotNull(current).getDouble(column(column))
+
+    override fun getBlob(column: Int): ByteArray? = requireNotNull(current).getBlob(column(column))
+
+    override fun getType(column: Int): Int = requireNotNull(current).getType(column(column))
+
+    override fun isNull(column: Int): Boolean = requireNotNull(current).isNull(column(column))
+
+    override fun registerContentObserver(observer: ContentObserver) {
+        cursors.forEach { it.registerContentObserver(observer) }
+    }
+
+    override fun unregisterContentObserver(observer: ContentObserver) {
+        cursors.forEach { it.unregisterContentObserver(observer) }
+    }
+
+    override fun registerDataSetObserver(observer: DataSetObserver) {
+        cursors.forEach { it.registerDataSetObserver(observer) }
+    }
+
+    override fun unregisterDataSetObserver(observer: DataSetObserver) {
+        cursors.forEach { it.unregisterDataSetObserver(observer) }
+    }
+
+    override fun deactivate() {
+        cursors.forEach { it.deactivate() }
+        super.deactivate()
+    }
+
+    override fun close() {
+        cursors.forEach { it.close() }
+        super.close()
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.os.Build
+import androidx.annotation.ColorInt
+import androidx.annotation.VisibleForTesting
+import androidx.collection.LongSparseArray
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.Executors
+
+private const val FILE_NAME = "louvre_placeholder_colors"
+private const val FILE_VERSION = 1
+@VisibleForTesting
+internal const val MAX_ENTRIES = 50_000
+private const val SAMPLE_GRID = 4
+
+/**
+ * Representative color of each media, keyed by media id.
+ *
+ * The colors are sampled from thumbnails already decoded by the gallery and persisted in the app cache,
+ * so the grid can paint meaningful placeholders before any decode happens.
+ * Once there are [MAX_ENTRIES] colors, the oldest ones are replaced by the new ones.
+ */
+class PlaceholderColors @VisibleForTesting internal constructor(private val file: File) {
+
+    private val lock = Any()
+    // Guarded by lock, replaced as a whole when the persisted colors are read
+    private var colors = LongSparseArray<Int>()
+    // The ids in the order they were put, a ring whose oldest id is at next once it is full
+    private var order = LongArray(MAX_ENTRIES)
+    private var next = 0
+    private var dirty = false
+    private val executor = Executors.newSingleThreadExecutor()
+
+    init {
+        executor.execute { read() }
+    }
+
+    @ColorInt
+    fun get(mediaId: Long, @ColorInt defaultColor: Int): Int =
+        synchronized(lock) {
+            val index = colors.indexOfKey(mediaId)
+            if (index >= 0) colors.valueAt(index) else defaultColor
+        }
+
+    fun contains(mediaId: Long): Boolean =
+        synchronized(lock) { colors.indexOfKey(mediaId) >= 0 }
+
+    fun put(mediaId: Long, @ColorInt color: Int) {
+        synchronized(lock) {
+            val index = colors.indexOfKey(mediaId)
+            if (index >= 0) {
+                colors.setValueAt(index, color)
+            } else {
+                if (colors.size() >= MAX_ENTRIES) {
+                    colors.remove(order[next])
+                }
+                colors.put(mediaId, color)
+                order[next] = mediaId
+                next = (next + 1) % MAX_ENTRIES
+            }
+            dirty = true
+        }
+    }
+
+    /**
+     * Persist the colors in background, if there is something new.
+     */
+    fun save() {
+        val snapshot = synchronized(lock) {
+            if (!dirty) null
+            else {
+                dirty = false
+                val ids = orderedIds()
+                ids to IntArray(ids.size) { colors.get(ids[it], 0) }
+            }
+        } ?: return
+        executor.execute { write(snapshot.first, snapshot.second) }
+    }
+
+    /**
+     * @return The ids from the oldest to the newest
+     */
+    private fun orderedIds(): LongArray {
+        val count = colors.size()
+        val oldest = if (count == MAX_ENTRIES) next else 0
+        return LongArray(count) { order[(oldest + it) % MAX_ENTRIES] }
+    }
+
+    /**
+     * Read the persisted colors with no lock held, since the gallery reads the colors on the main thread meanwhile,
+     * and then merge them with the ones sampled in the meantime.
+     */
+    private fun read() {
+        val (ids, values) = readFile() ?: return
+        val loaded = LongSparseArray<Int>(ids.size)
+        // Appending in key order is a plain copy
+        for (i in ids.indices.sortedBy { ids[it] }) {
+            loaded.append(ids[i], values[i])
+        }
+        merge(ids, loaded)
+    }
+
+    private fun readFile(): Pair<LongArray, IntArray>? {
+        if (!file.exists()) return null
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != FILE_VERSION) return null
+                val count = input.readInt()
+                if (count < 0 || count > MAX_ENTRIES) throw IOException("Invalid count $count")
+                val ids = LongArray(count)
+                val values = IntArray(count)
+                for (i in 0 until count) {
+                    ids[i] = input.readLong()
+                    values[i] = input.readInt()
+                }
+                ids to values
+            }
+        } catch (e: IOException) {
+            file.delete()
+            null
+        }
+    }
+
+    private fun merge(persistedIds: LongArray, loaded: LongSparseArray<Int>) {
+        synchronized(lock) {
+            // Colors sampled in the meantime are newer than the persisted ones
+            val sampled = orderedIds()
+            val evicted = maxOf(0, persistedIds.size + sampled.size - MAX_ENTRIES)
+            val merged = LongArray(MAX_ENTRIES)
+            var count = 0
+            for (i in persistedIds.indices) {
+                val id = persistedIds[i]
+                if (colors.indexOfKey(id) >= 0) continue
+                if (i < evicted) {
+                    loaded.remove(id)
+                } else {
+                    merged[count++] = id
+                }
+            }
+            for (id in sampled) {
+                loaded.put(id, colors.get(id, 0))
+                merged[count++] = id
+            }
+            colors = loaded
+            order = merged
+            next = count % MAX_ENTRIES
+        }
+    }
+
+    private fun write(ids: LongArray, values: IntArray) {
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { output ->
+                output.writeInt(FILE_VERSION)
+                output.writeInt(ids.size)
+                for (i in ids.indices) {
+                    output.writeLong(ids[i])
+                    output.writeInt(values[i])
+                }
+            }
+            temp.renameTo(file)
+        } catch (e: IOException) {
+            temp.delete()
+        }
+    }
+
+    companion object {
+
+        @Volatile
+        private var instance: PlaceholderColors? = null
+
+        @JvmStatic
+        fun getInstance(context: Context): PlaceholderColors =
+            instance ?: synchronized(this) {
+                instance ?: PlaceholderColors(File(context.applicationContext.cacheDir, FILE_NAME))
+                    .also { instance = it }
+            }
+
+        /**
+         * The pixels of [Bitmap.Config.HARDWARE] bitmaps, which Glide may decode from its disk cache, can not be read
+         */
+        @JvmStatic
+        fun canSample(bitmap: Bitmap): Boolean =
+            Build.VERSION.SDK_INT < Build.VERSION_CODES.O || bitmap.config != Bitmap.Config.HARDWARE
+
+        /**
+         * Average a small grid of pixels. It is cheap enough to run right after a thumbnail is ready.
+         */
+        @JvmStatic
+        @ColorInt
+        fun sampleColor(bitmap: Bitmap): Int {
+            var red = 0
+            var green = 0
+            var blue = 0
+            val stepX = bitmap.width / SAMPLE_GRID
+            val stepY = bitmap.height / SAMPLE_GRID
+            for (y in 0 until SAMPLE_GRID) {
+                for (x in 0 until SAMPLE_GRID) {
+                    val pixel = bitmap.getPixel(x * stepX + stepX / 2, y * stepY + stepY / 2)
+                    red += Color.red(pixel)
+                    green += Color.green(pixel)
+                    blue += Color.blue(pixel)
+                }
+            }
+            val samples = SAMPLE_GRID * SAMPLE_GRID
+            return Color.rgb(red / samples, green / samples, blue / samples)
+        }
+    }
+}
@@ -37,7 +37,11 @@ import com.andremion.counterfab.CounterFab;
 import com.andremion.louvre.R;
 import com.andremion.louvre.StoragePermissionActivity;
 import com.andremion.louvre.preview.PreviewActivity;
+import com.andremion.louvre.util.Metrics;
+import com.andremion.louvre.util.SelectionEvents;
+import com.andremion.louvre.util.ThumbnailOptions;
 import com.andremion.louvre.util.transition.TransitionCallback;
+import com.bumptech.glide.request.RequestOptions;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -48,6 +52,8 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
     private static final String EXTRA_MAX_SELECTION = GalleryActivity.class.getPackage().getName() + ".extra.MAX_SELECTION";
     private static final String EXTRA_MEDIA_TYPE_FILTER = GalleryActivity.class.getPackage().getName() + ".extra.MEDIA_TYPE_FILTER";
     private static final String EXTRA_SELECTION = GalleryActivity.class.getPackage().getName() + ".extra.SELECTION";
+    private static final String EXTRA_THUMBNAIL_SIZE = GalleryActivity.class.getPackage().getName() + ".extra.THUMBNAIL_SIZE";
+    private static final String EXTRA_LIGHTWEIGHT_CELLS = GalleryActivity.class.getPackage().getName() + ".extra.LIGHTWEIGHT_CELLS";
     private static final int DEFAULT_MAX_SELECTION = 1;
     private static final String TITLE_STATE = "title_state";
     private static final int PREVIEW_REQUEST_CODE = 0;
@@ -65,7 +71,25 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
                                      @IntRange(from = 0) int maxSelection,
                                      List<Uri> selection,
                                      String... mediaTypeFilter) {
-        Intent intent = buildIntent(activity, maxSelection, selection, mediaTypeFilter);
+        startActivity(activity, requestCode, maxSelection, selection, false, mediaTypeFilter);
+    }
+
+    /**
+     * Start the Gallery Activity with additional launch information.
+     *
+     * @param activity         Context to launch activity from.
+     * @param requestCode      If >= 0, this code will be returned in onActivityResult() when the activity exits.
+     * @param maxSelection     The max count of image selection
+     * @param selection        The current image selection
+     * @param lightweightCells If the media items should be drawn by a single lightweight view
+     * @param mediaTypeFilter  The media types that will display
+     */
+    public static void startActivity(@NonNull Activity activity, int requestCode,
+                                     @IntRange(from = 0) int maxSelection,
+                                     List<Uri> selection,
+                                     boolean lightweightCells,
+                                     String... mediaTypeFilter) {
+        Intent intent = buildIntent(activity, maxSelection, selection, lightweightCells, mediaTypeFilter);
         activity.startActivityForResult(intent, requestCode);
     }
 
@@ -82,12 +106,31 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
                                      @IntRange(from = 0) int maxSelection,
                                      List<Uri> selection,
                                      String... mediaTypeFilter) {
-        Intent intent = buildIntent(fragment.getContext(), maxSelection, selection, mediaTypeFilter);
+        startActivity(fragment, requestCode, maxSelection, selection, false, mediaTypeFilter);
+    }
+
+    /**
+     * Start the Gallery Activity with additional launch information.
+     *
+     * @param fragment         Context to launch fragment from.
+     * @param requestCode      If >= 0, this code will be returned in onActivityResult() when the fragment exits.
+     * @param maxSelection     The max count of image selection
+     * @param selection        The current image selection
+     * @param lightweightCells If the media items should be drawn by a single lightweight view
+     * @param mediaTypeFilter  The media types that will display
+     */
+    public static void startActivity(@NonNull Fragment fragment, int requestCode,
+                                     @IntRange(from = 0) int maxSelection,
+                                     List<Uri> selection,
+                                     boolean lightweightCells,
+                                     String... mediaTypeFilter) {
+        Intent intent = buildIntent(fragment.getContext(), maxSelection, selection, lightweightCells, mediaTypeFilter);
         fragment.startActivityForResult(intent, requestCode);
     }
 
     @NonNull
-    private static Intent buildIntent(@NonNull Context context, @IntRange(from = 0) int maxSelection, List<Uri> selection, String[] mediaTypeFilter) {
+    private static Intent buildIntent(@NonNull Context context, @IntRange(from = 0) int maxSelection, List<Uri> selection,
+                                      boolean lightweightCells, String[] mediaTypeFilter) {
         Intent intent = new Intent(context, GalleryActivity.class);
         if (maxSelection > 0) {
             intent.putExtra(EXTRA_MAX_SELECTION, maxSelection);
@@ -98,6 +141,9 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
         if (mediaTypeFilter != null && mediaTypeFilter.length > 0) {
             intent.putExtra(EXTRA_MEDIA_TYPE_FILTER, mediaTypeFilter);
         }
+        if (lightweightCells) {
+            intent.putExtra(EXTRA_LIGHTWEIGHT_CELLS, true);
+        }
         return intent;
     }
 
@@ -105,13 +151,26 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
         return data.getParcelableArrayListExtra(EXTRA_SELECTION);
     }
 
+    /**
+     * Glide options to load the selection with the thumbnails already decoded by the gallery,
+     * straight from Glide's memory cache while they are still there.
+     */
+    @NonNull
+    public static RequestOptions getThumbnailOptions(Intent data) {
+        return ThumbnailOptions.get(data.getIntExtra(EXTRA_THUMBNAIL_SIZE, 0));
+    }
+
     private GalleryFragment mFragment;
     private ViewGroup mContentView;
     private CounterFab mFab;
+    private boolean mResultDelivered;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (savedInstanceState == null) {
+            Metrics.onPickerOpened();
+        }
         setContentView(R.layout.activity_gallery);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -124,19 +183,26 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
 
         mFragment = (GalleryFragment) getSupportFragmentManager().findFragmentById(R.id.fragment_gallery);
         mFragment.setMaxSelection(getIntent().getIntExtra(EXTRA_MAX_SELECTION, DEFAULT_MAX_SELECTION));
-        if (getIntent().hasExtra(EXTRA_SELECTION)) {
+        mFragment.setLightweightCells(getIntent().getBooleanExtra(EXTRA_LIGHTWEIGHT_CELLS, false));
+        // The current selection is kept across configuration changes
+        if (savedInstanceState == null && getIntent().hasExtra(EXTRA_SELECTION)) {
             //noinspection unchecked
             mFragment.setSelection((List<Uri>) getIntent().getSerializableExtra(EXTRA_SELECTION));
         }
         if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
             mFragment.setMediaTypeFilter(getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
         }
+        mFab.setCount(mFragment.getSelection().size());
 
         if (savedInstanceState == null) {
             setResult(RESULT_CANCELED);
             askForPermission();
         } else {
             setActionBarTitle(savedInstanceState.getString(TITLE_STATE));
+            if (!mFragment.hasRetainedState()) {
+                // The process was killed while in background
+                askForPermission();
+            }
         }
     }
 
@@ -169,7 +235,17 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
 
     @Override
     public void onPermissionGranted() {
-        mFragment.loadBuckets();
+        Metrics.onPermissionGranted();
+        mFragment.loadData();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing()) {
+            Metrics.onPickerClosed();
+            SelectionEvents.onPickerClosed(!mResultDelivered);
+        }
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -197,7 +273,9 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
     public void onClick(View v) {
         Intent data = new Intent();
         data.putExtra(EXTRA_SELECTION, (ArrayList<Uri>) mFragment.getSelection());
+        data.putExtra(EXTRA_THUMBNAIL_SIZE, mFragment.getThumbnailSize());
         setResult(RESULT_OK, data);
+        mResultDelivered = true;
         finish();
     }
 
@@ -207,7 +285,7 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
     }
 
     @Override
-    public void onMediaClick(@NonNull View imageView, @NonNull View checkView, long bucketId, int position) {
+    public void onMediaClick(@NonNull View imageView, @Nullable View checkView, long bucketId, int position) {
         if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
             PreviewActivity.startActivity(this, PREVIEW_REQUEST_CODE, imageView, checkView, bucketId, position, mFragment.getSelection(),
                     getIntent().getIntExtra(EXTRA_MAX_SELECTION, DEFAULT_MAX_SELECTION),
@@ -16,14 +16,29 @@
 
 package com.andremion.louvre.home;
 
+import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.MediaStore;
+import androidx.annotation.ColorInt;
 import androidx.annotation.IntDef;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LongSparseArray;
+import androidx.core.content.ContextCompat;
+import androidx.core.os.TraceCompat;
+import androidx.core.view.AccessibilityDelegateCompat;
 import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -34,13 +49,28 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.andremion.louvre.R;
+import com.andremion.louvre.core.SelectionSet;
+import com.andremion.louvre.data.IdDiffCallback;
+import com.andremion.louvre.data.MediaCursor;
+import com.andremion.louvre.data.MediaQuery;
+import com.andremion.louvre.data.PlaceholderColors;
 import com.andremion.louvre.util.AnimationHelper;
+import com.andremion.louvre.util.Metrics;
+import com.andremion.louvre.util.SelectionEvents;
+import com.andremion.louvre.util.ThumbnailOptions;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.ObjectKey;
 
-import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -55,8 +85,21 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     static final int VIEW_TYPE_MEDIA = 1;
 
     private static final String SELECTION_PAYLOAD = "selection";
+    private static final String DENSITY_PAYLOAD = "density";
     private static final float SELECTED_SCALE = .8f;
     private static final float UNSELECTED_SCALE = 1f;
+    @VisibleForTesting
+    static final int MAX_CACHED_URIS = 2048;
+    private static final int MAX_VIEWPORT_ITEMS = 200;
+    private static final String VIEWPORT_VIEW_TYPE = "view_type";
+    private static final String VIEWPORT_COLUMNS = "columns";
+    private static final String VIEWPORT_VALUES = "values";
+    private static final String TRACE_CREATE_VIEW_HOLDER = "Louvre:GalleryAdapter.onCreateViewHolder";
+    private static final String TRACE_BIND_VIEW_HOLDER = "Louvre:GalleryAdapter.onBindViewHolder";
+    private static final String TRACE_LOAD_THUMBNAIL = "Louvre:loadThumbnail";
+
+    // Thumbnail requests are only made from the main thread
+    private static int sTraceCookie;
 
     @IntDef({VIEW_TYPE_BUCKET, VIEW_TYPE_MEDIA})
     @Retention(RetentionPolicy.SOURCE)
@@ -67,7 +110,7 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
 
         void onBucketClick(long bucketId, String label);
 
-        void onMediaClick(View imageView, View checkView, long bucketId, int position);
+        void onMediaClick(View imageView, @Nullable View checkView, long bucketId, int position);
 
         void onSelectionUpdated(int count);
 
@@ -76,7 +119,7 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         void onWillExceedMaxSelection();
     }
 
-    private final List<Uri> mSelection;
+    private final SelectionSet<Uri> mSelection;
 
     @Nullable
     private Callbacks mCallbacks;
@@ -86,9 +129,28 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     private int mViewType = VIEW_TYPE_BUCKET;
     @Nullable
     private Cursor mData;
-
-    GalleryAdapter() {
-        mSelection = new LinkedList<>();
+    private int mIdColumn;
+    private int mBucketIdColumn;
+    private int mLabelColumn;
+    private int mDateModifiedColumn;
+    @Nullable
+    private long[] mItemIds;
+    @Nullable
+    private long[] mItemVersions;
+    @Nullable
+    private RequestOptions[] mBucketCoverOptions;
+    private final LongSparseArray<Uri> mMediaUris = new LongSparseArray<>();
+    @Nullable
+    private PlaceholderColors mPlaceholderColors;
+    @ColorInt
+    private int mDefaultPlaceholderColor = Color.TRANSPARENT;
+    private int mItemSize;
+    private RequestOptions mThumbnailOptions = ThumbnailOptions.getDefault();
+    private int mLoadedThumbnailSize;
+    private boolean mLightweightCells;
+
+    GalleryAdapter(@NonNull SelectionSet<Uri> selection) {
+        mSelection = selection;
         setHasStableIds(true);
     }
 
@@ -104,25 +166,163 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         mLayoutManager = layoutManager;
     }
 
+    /**
+     * Draw media items with a single {@link MediaCellView} instead of inflating their layout.
+     * It only affects view holders created afterwards, so it should be set before the items are laid out.
+     */
+    void setLightweightCells(boolean lightweightCells) {
+        mLightweightCells = lightweightCells;
+    }
+
+    void setPlaceholderColors(@Nullable PlaceholderColors placeholderColors) {
+        mPlaceholderColors = placeholderColors;
+    }
+
+    /**
+     * Change the item size of the grid.
+     * Items already bound keep showing their current thumbnail while the new size is loaded.
+     *
+     * @param itemSize      The height of the items
+     * @param thumbnailSize The size of the thumbnails to decode
+     */
+    void setItemSize(@IntRange(from = 1) int itemSize, @IntRange(from = 1) int thumbnailSize) {
+        RequestOptions thumbnailOptions = ThumbnailOptions.get(thumbnailSize);
+        if (itemSize != mItemSize || thumbnailOptions != mThumbnailOptions) {
+            mItemSize = itemSize;
+            mThumbnailOptions = thumbnailOptions;
+            notifyItemRangeChanged(0, getItemCount(), DENSITY_PAYLOAD);
+        }
+    }
+
+    /**
+     * @return The size of the last media thumbnails loaded, so they can be loaded again from memory cache
+     * @see ThumbnailOptions
+     */
+    int getLoadedThumbnailSize() {
+        return mLoadedThumbnailSize;
+    }
+
+    /**
+     * Swapping data of the same type only notifies the items that changed, matched by their ids,
+     * so the cells that are still there keep their images.
+     * The diff of media items comes computed in background along with the {@link MediaCursor}.
+     */
     void swapData(@ViewType int viewType, @Nullable Cursor data) {
-        if (viewType != mViewType) {
-            mViewType = viewType;
+        if (data == mData && viewType == mViewType) {
+            return;
+        }
+        boolean sameViewType = viewType == mViewType;
+        long[] oldIds = mItemIds;
+        long[] oldVersions = mItemVersions;
+        mViewType = viewType;
+        mData = data;
+        mItemIds = null;
+        mItemVersions = null;
+        mBucketCoverOptions = null;
+        if (data != null) {
+            // Column indexes are resolved once per data set instead of on every bind
+            mIdColumn = data.getColumnIndex(MediaStore.Images.Media._ID);
+            mBucketIdColumn = data.getColumnIndex(MediaStore.Images.Media.BUCKET_ID);
+            mLabelColumn = data.getColumnIndex(VIEW_TYPE_MEDIA == viewType
+                    ? MediaStore.Images.Media.DISPLAY_NAME
+                    : MediaStore.Images.Media.BUCKET_DISPLAY_NAME);
+            mDateModifiedColumn = data.getColumnIndex(MediaStore.Images.Media.DATE_MODIFIED);
+            if (data instanceof MediaCursor) {
+                mItemIds = ((MediaCursor) data).getIds();
+            } else {
+                mItemIds = readColumn(data, VIEW_TYPE_MEDIA == viewType ? mIdColumn : mBucketIdColumn);
+                mItemVersions = VIEW_TYPE_BUCKET == viewType ? readColumn(data, mDateModifiedColumn) : null;
+            }
+            if (VIEW_TYPE_BUCKET == viewType) {
+                mBucketCoverOptions = createBucketCoverOptions(mItemIds,
+                        mItemVersions != null ? mItemVersions : readColumn(data, mDateModifiedColumn));
+            }
         }
-        if (data != mData) {
-            mData = data;
+        DiffUtil.DiffResult diff = null;
+        if (sameViewType && oldIds != null && mItemIds != null) {
+            if (data instanceof MediaCursor) {
+                // The diff is only valid against the data it was computed from
+                MediaCursor mediaCursor = (MediaCursor) data;
+                if (mediaCursor.getPreviousIds() == oldIds) {
+                    diff = mediaCursor.getDiff();
+                }
+            } else {
+                // There are just a few buckets
+                diff = IdDiffCallback.calculateDiff(oldIds, mItemIds, oldVersions, mItemVersions);
+            }
+        }
+        if (diff != null) {
+            // Keep the new items visible when they arrive at the top
+            boolean atTop = mLayoutManager != null && mLayoutManager.findFirstCompletelyVisibleItemPosition() == 0;
+            diff.dispatchUpdatesTo(this);
+            if (atTop) {
+                mLayoutManager.scrollToPosition(0);
+            }
+        } else {
             notifyDataSetChanged();
         }
     }
 
+    /**
+     * Save the rows of the given range, so they can be displayed while the whole data is loaded again.
+     *
+     * @see #restoreViewport(Bundle)
+     */
+    @Nullable
+    Bundle saveViewport(@IntRange(from = 0) int from, @IntRange(from = 0) int count) {
+        if (mData == null || mData.isClosed()) {
+            return null;
+        }
+        count = Math.min(count, Math.min(MAX_VIEWPORT_ITEMS, mData.getCount() - from));
+        String[] columns = mData.getColumnNames();
+        String[] values = new String[columns.length * Math.max(0, count)];
+        for (int row = 0; row < count; row++) {
+            mData.moveToPosition(from + row);
+            for (int column = 0; column < columns.length; column++) {
+                values[row * columns.length + column] = mData.getString(column);
+            }
+        }
+        Bundle viewport = new Bundle();
+        viewport.putInt(VIEWPORT_VIEW_TYPE, mViewType);
+        viewport.putStringArray(VIEWPORT_COLUMNS, columns);
+        viewport.putStringArray(VIEWPORT_VALUES, values);
+        return viewport;
+    }
+
+    /**
+     * Display the rows saved by {@link #saveViewport(int, int)}
+     */
+    void restoreViewport(@NonNull Bundle viewport) {
+        String[] columns = viewport.getStringArray(VIEWPORT_COLUMNS);
+        String[] values = viewport.getStringArray(VIEWPORT_VALUES);
+        if (columns == null || values == null || columns.length == 0) {
+            return;
+        }
+        // MatrixCursor parses the numeric columns back from their string values
+        MatrixCursor data = new MatrixCursor(columns, values.length / columns.length);
+        Object[] row = new Object[columns.length];
+        for (int offset = 0; offset < values.length; offset += columns.length) {
+            System.arraycopy(values, offset, row, 0, columns.length);
+            data.addRow(row);
+        }
+        //noinspection WrongConstant
+        swapData(viewport.getInt(VIEWPORT_VIEW_TYPE), data);
+    }
+
+    @NonNull
+    private static long[] readColumn(@NonNull Cursor data, int column) {
+        long[] values = new long[data.getCount()];
+        for (int position = 0; position < values.length; position++) {
+            data.moveToPosition(position);
+            values[position] = data.getLong(column);
+        }
+        return values;
+    }
+
     @Override
     public long getItemId(int position) {
-        if (mData != null && !mData.isClosed()) {
-            mData.moveToPosition(position);
-            if (VIEW_TYPE_MEDIA == mViewType) {
-                return mData.getLong(mData.getColumnIndex(MediaStore.Images.Media._ID));
-            } else {
-                return mData.getLong(mData.getColumnIndex(MediaStore.Images.Media.BUCKET_ID));
-            }
+        if (mData != null && !mData.isClosed() && mItemIds != null) {
+            return mItemIds[position];
         }
         return super.getItemId(position);
     }
@@ -140,46 +340,81 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         return mViewType;
     }
 
+    /**
+     * View holders can also be created ahead of time, while the main thread is idle, by {@link ViewHolderPreInflater}.
+     */
     @Override
     public GalleryAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, @ViewType int viewType) {
-        if (VIEW_TYPE_MEDIA == viewType) {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_media, parent, false);
+        TraceCompat.beginSection(TRACE_CREATE_VIEW_HOLDER);
+        try {
+            return inflateViewHolder(parent, viewType);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private GalleryAdapter.ViewHolder inflateViewHolder(ViewGroup parent, @ViewType int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (VIEW_TYPE_MEDIA == viewType && mLightweightCells) {
+            MediaCellView view = new MediaCellView(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                    parent.getResources().getDimensionPixelSize(R.dimen.gallery_item_size)));
+            return new MediaViewHolder(view);
+        } else if (VIEW_TYPE_MEDIA == viewType) {
+            View view = inflater.inflate(R.layout.list_item_gallery_media, parent, false);
             return new MediaViewHolder(view);
         } else {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_bucket, parent, false);
+            View view = inflater.inflate(R.layout.list_item_gallery_bucket, parent, false);
             return new BucketViewHolder(view);
         }
     }
 
+    /**
+     * Binding a media item does not allocate in steady state: column indexes are resolved on swap,
+     * Uris are cached per media id, request options are shared, the content description is only read
+     * by accessibility services and transition names are only set when a shared element transition
+     * is about to happen (see {@link MediaViewHolder#updateTransitionNames()}).
+     */
     @Override
     public void onBindViewHolder(@NonNull GalleryAdapter.ViewHolder holder, int position) {
-        Uri data = getData(position);
-        String imageTransitionName = holder.itemView.getContext().getString(R.string.activity_gallery_image_transition, data.toString());
-        String checkboxTransitionName = holder.itemView.getContext().getString(R.string.activity_gallery_checkbox_transition, data.toString());
-        ViewCompat.setTransitionName(holder.mImageView, imageTransitionName);
-        Glide.with(holder.mImageView.getContext())
-                .load(data)
-                .apply(RequestOptions.skipMemoryCacheOf(true)
-                        .centerCrop()
-                        .placeholder(R.color.gallery_item_background))
-                .into(holder.mImageView);
+        TraceCompat.beginSection(TRACE_BIND_VIEW_HOLDER);
+        try {
+            bindViewHolder(holder, position);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
 
-        boolean selected = isSelected(position);
-        if (selected) {
-            holder.mImageView.setScaleX(SELECTED_SCALE);
-            holder.mImageView.setScaleY(SELECTED_SCALE);
+    private void bindViewHolder(@NonNull GalleryAdapter.ViewHolder holder, int position) {
+        Uri data = getData(position);
+        applyItemSize(holder);
+        if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
+            MediaViewHolder viewHolder = (MediaViewHolder) holder;
+            long mediaId = getItemId(position);
+            viewHolder.clearTransitionNames();
+            holder.mImageView.setBackgroundColor(getPlaceholderColor(holder.mImageView.getContext(), mediaId));
+            // The same item is bound again when the data set changes, so there is no need to reload it
+            if (viewHolder.mPlaceholderCallback.mMediaId != mediaId) {
+                viewHolder.mPlaceholderCallback.mMediaId = mediaId;
+                viewHolder.mLoadedOptions = null;
+            }
+            if (viewHolder.mLoadedOptions != mThumbnailOptions) {
+                loadThumbnail(viewHolder, data);
+            }
         } else {
-            holder.mImageView.setScaleX(UNSELECTED_SCALE);
-            holder.mImageView.setScaleY(UNSELECTED_SCALE);
+            Glide.with(holder.mImageView.getContext())
+                    .load(data)
+                    .apply(getBucketCoverOptions(position))
+                    .into(holder.mImageView);
         }
 
         if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
             MediaViewHolder viewHolder = (MediaViewHolder) holder;
-            ViewCompat.setTransitionName(viewHolder.mCheckView, checkboxTransitionName);
-            viewHolder.mCheckView.setChecked(selected);
-            holder.mImageView.setContentDescription(getLabel(position));
+            viewHolder.setChecked(isSelected(position), false);
         } else {
             BucketViewHolder viewHolder = (BucketViewHolder) holder;
+            holder.mImageView.setScaleX(UNSELECTED_SCALE);
+            holder.mImageView.setScaleY(UNSELECTED_SCALE);
             viewHolder.mTextView.setText(getLabel(position));
         }
     }
@@ -193,17 +428,21 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
             super.onBindViewHolder(holder, position, payloads);
         } else {
             for (Object payload : payloads) {
-                boolean selected = isSelected(position);
-                if (SELECTION_PAYLOAD.equals(payload)) {
+                if (DENSITY_PAYLOAD.equals(payload)) {
+                    applyItemSize(holder);
                     if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
                         MediaViewHolder viewHolder = (MediaViewHolder) holder;
-                        viewHolder.mCheckView.setChecked(selected);
-                        if (selected) {
-                            AnimationHelper.scaleView(holder.mImageView, SELECTED_SCALE);
-                        } else {
-                            AnimationHelper.scaleView(holder.mImageView, UNSELECTED_SCALE);
+                        if (viewHolder.mLoadedOptions != mThumbnailOptions) {
+                            loadThumbnail(viewHolder, getData(position));
                         }
                     }
+                    continue;
+                }
+                if (SELECTION_PAYLOAD.equals(payload)) {
+                    if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
+                        MediaViewHolder viewHolder = (MediaViewHolder) holder;
+                        viewHolder.setChecked(isSelected(position), true);
+                    }
                 }
             }
         }
@@ -214,9 +453,7 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     }
 
     void setSelection(@NonNull List<Uri> selection) {
-        if (!mSelection.equals(selection)) {
-            mSelection.clear();
-            mSelection.addAll(selection);
+        if (mSelection.replaceWith(selection)) {
             notifySelectionChanged();
         }
     }
@@ -226,26 +463,31 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
             return;
         }
         List<Uri> selectionToAdd = new LinkedList<>();
+        List<Integer> positionsToAdd = new LinkedList<>();
         int count = mData.getCount();
         for (int position = 0; position < count; position++) {
             if (!isSelected(position)) {
                 Uri data = getData(position);
                 selectionToAdd.add(data);
+                positionsToAdd.add(position);
             }
         }
-        if (mSelection.size() + selectionToAdd.size() > mMaxSelection) {
-            if (mCallbacks != null) {
-                mCallbacks.onWillExceedMaxSelection();
+        if (mSelection.addAllOrNone(selectionToAdd, mMaxSelection)) {
+            Iterator<Uri> data = selectionToAdd.iterator();
+            for (int position : positionsToAdd) {
+                SelectionEvents.onSelected(getItemId(position), data.next());
             }
-        } else {
-            mSelection.addAll(selectionToAdd);
             notifySelectionChanged();
+        } else if (mCallbacks != null) {
+            mCallbacks.onWillExceedMaxSelection();
         }
     }
 
     void clearSelection() {
         if (!mSelection.isEmpty()) {
+            List<Uri> selectionToRemove = new LinkedList<>(mSelection);
             mSelection.clear();
+            SelectionEvents.onUnselected(selectionToRemove);
             notifySelectionChanged();
         }
     }
@@ -271,23 +513,115 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     private String getLabel(int position) {
         assert mData != null; // It is supposed not be null here
         mData.moveToPosition(position);
-        if (mViewType == VIEW_TYPE_MEDIA) {
-            return mData.getString(mData.getColumnIndex(MediaStore.Images.Media.DISPLAY_NAME));
-        } else {
-            return mData.getString(mData.getColumnIndex(MediaStore.Images.Media.BUCKET_DISPLAY_NAME));
-        }
+        return mData.getString(mLabelColumn);
     }
 
+    /**
+     * @return The content Uri of the media item, or of the cover for bucket items
+     */
     private Uri getData(int position) {
         assert mData != null; // It is supposed not be null here
-        mData.moveToPosition(position);
-        return Uri.fromFile(new File(mData.getString(mData.getColumnIndex(MediaStore.Images.Media.DATA))));
+        long mediaId;
+        if (mViewType == VIEW_TYPE_MEDIA && mItemIds != null) {
+            mediaId = mItemIds[position];
+        } else {
+            mData.moveToPosition(position);
+            mediaId = mData.getLong(mIdColumn);
+        }
+        Uri uri = mMediaUris.get(mediaId);
+        if (uri == null) {
+            // Scrolling a huge bucket must not grow it without bound. It is refilled by the items still on screen.
+            if (mMediaUris.size() >= MAX_CACHED_URIS) {
+                mMediaUris.clear();
+            }
+            uri = MediaQuery.getMediaUri(mediaId);
+            mMediaUris.put(mediaId, uri);
+        }
+        return uri;
+    }
+
+    @VisibleForTesting
+    int getCachedUriCount() {
+        return mMediaUris.size();
+    }
+
+    /**
+     * Load the thumbnail in the current size.
+     * If this holder already shows the same item in another size, that thumbnail is kept in memory cache
+     * and it is displayed right away while the new size is decoded.
+     */
+    private void loadThumbnail(@NonNull MediaViewHolder holder, @NonNull Uri data) {
+        requestThumbnail(holder, data);
+        holder.mLoadedOptions = mThumbnailOptions;
+        mLoadedThumbnailSize = mThumbnailOptions.getOverrideWidth();
+    }
+
+    @VisibleForTesting
+    void requestThumbnail(@NonNull MediaViewHolder holder, @NonNull Uri data) {
+        RequestBuilder<Drawable> request = Glide.with(holder.mImageView.getContext())
+                .load(data)
+                .apply(mThumbnailOptions)
+                .listener(holder.mPlaceholderCallback);
+        holder.mPlaceholderCallback.beginTrace();
+        if (holder.mLoadedOptions != null) {
+            request = request.thumbnail(Glide.with(holder.mImageView.getContext())
+                    .load(data)
+                    .apply(holder.mLoadedOptions)
+                    .onlyRetrieveFromCache(true));
+        }
+        request.into(holder.mImageView);
+    }
+
+    private void applyItemSize(@NonNull ViewHolder holder) {
+        ViewGroup.LayoutParams layoutParams = holder.itemView.getLayoutParams();
+        if (mItemSize > 0 && layoutParams != null && layoutParams.height != mItemSize) {
+            layoutParams.height = mItemSize;
+            holder.itemView.setLayoutParams(layoutParams);
+        }
+    }
+
+    /**
+     * The placeholder is painted as the image background, so an unloaded cell costs no decode at all.
+     */
+    @ColorInt
+    private int getPlaceholderColor(@NonNull Context context, long mediaId) {
+        if (mDefaultPlaceholderColor == Color.TRANSPARENT) {
+            mDefaultPlaceholderColor = ContextCompat.getColor(context, R.color.gallery_item_background);
+        }
+        if (mPlaceholderColors == null) {
+            return mDefaultPlaceholderColor;
+        }
+        return mPlaceholderColors.get(mediaId, mDefaultPlaceholderColor);
+    }
+
+    /**
+     * Bucket covers are kept in memory and their downsampled thumbnails are persisted in disk cache.
+     * The signature is bound to the bucket and to the modification date of its cover, which is its newest item,
+     * so the cached cover is invalidated as soon as it is edited or a newer item arrives in that bucket.
+     * The options are created once per data set, one for each bucket row.
+     */
+    @NonNull
+    private static RequestOptions[] createBucketCoverOptions(@NonNull long[] bucketIds, @NonNull long[] datesModified) {
+        RequestOptions[] options = new RequestOptions[bucketIds.length];
+        for (int position = 0; position < options.length; position++) {
+            options[position] = RequestOptions.diskCacheStrategyOf(DiskCacheStrategy.RESOURCE)
+                    .signature(new ObjectKey(bucketIds[position] + ":" + datesModified[position]))
+                    .centerCrop()
+                    .placeholder(R.color.gallery_item_background);
+        }
+        return options;
+    }
+
+    @NonNull
+    private RequestOptions getBucketCoverOptions(int position) {
+        assert mBucketCoverOptions != null; // It is supposed not be null here
+        return mBucketCoverOptions[position];
     }
 
     private long getBucketId(int position) {
         assert mData != null; // It is supposed not be null here
         mData.moveToPosition(position);
-        return mData.getLong(mData.getColumnIndex(MediaStore.Images.Media.BUCKET_ID));
+        return mData.getLong(mBucketIdColumn);
     }
 
     abstract class ViewHolder extends RecyclerView.ViewHolder {
@@ -329,12 +663,39 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
 
     class MediaViewHolder extends ViewHolder implements View.OnClickListener {
 
+        /**
+         * Only available for inflated items. Lightweight items draw their check mark in {@link #mCellView}.
+         */
+        @Nullable
         final CheckedTextView mCheckView;
+        @Nullable
+        private final MediaCellView mCellView;
+        private final PlaceholderCallback mPlaceholderCallback;
+        @Nullable
+        private RequestOptions mLoadedOptions;
 
         private MediaViewHolder(View itemView) {
             super(itemView);
             mCheckView = itemView.findViewById(R.id.check);
-            mCheckView.setOnClickListener(this);
+            mCellView = itemView instanceof MediaCellView ? (MediaCellView) itemView : null;
+            mPlaceholderCallback = new PlaceholderCallback();
+            mPlaceholderCallback.mMediaId = RecyclerView.NO_ID;
+            ViewCompat.setImportantForAccessibility(mImageView, ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
+            ViewCompat.setAccessibilityDelegate(mImageView, new AccessibilityDelegateCompat() {
+                @Override
+                public void onInitializeAccessibilityNodeInfo(View host, AccessibilityNodeInfoCompat info) {
+                    super.onInitializeAccessibilityNodeInfo(host, info);
+                    // The label is read when an accessibility service asks for it, not on every bind.
+                    // The layout position is the item on screen, even while adapter updates are pending.
+                    int position = getLayoutPosition();
+                    if (position != RecyclerView.NO_POSITION && position < getItemCount()) {
+                        info.setContentDescription(getLabel(position));
+                    }
+                }
+            });
+            if (mCheckView != null) {
+                mCheckView.setOnClickListener(this);
+            }
             itemView.setOnClickListener(this);
         }
 
@@ -348,7 +709,7 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
                 return;
             }
 
-            if (v == mCheckView) {
+            if (v == mCheckView || (mCellView != null && mCellView.isCheckTouched())) {
                 boolean selectionChanged = handleChangeSelection(position);
                 if (selectionChanged) {
                     notifyItemChanged(position, SELECTION_PAYLOAD);
@@ -362,22 +723,108 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
                 }
             } else {
                 if (mCallbacks != null) {
+                    updateTransitionNames();
                     mCallbacks.onMediaClick(mImageView, mCheckView, getBucketId(position), position);
                 }
             }
         }
 
+        private void setChecked(boolean selected, boolean animate) {
+            float scale = selected ? SELECTED_SCALE : UNSELECTED_SCALE;
+            if (mCellView != null) {
+                mCellView.setChecked(selected, scale, animate);
+                return;
+            }
+            assert mCheckView != null; // Inflated items always have it
+            mCheckView.setChecked(selected);
+            if (animate) {
+                AnimationHelper.scaleView(mImageView, scale);
+            } else {
+                mImageView.setScaleX(scale);
+                mImageView.setScaleY(scale);
+            }
+        }
+
+        /**
+         * Set the shared element transition names derived from the media id.
+         * They are only needed right before a transition, so they are not set while binding.
+         */
+        void updateTransitionNames() {
+            Context context = itemView.getContext();
+            String mediaId = String.valueOf(getItemId());
+            ViewCompat.setTransitionName(mImageView, context.getString(R.string.activity_gallery_image_transition, mediaId));
+            if (mCheckView != null) {
+                ViewCompat.setTransitionName(mCheckView, context.getString(R.string.activity_gallery_checkbox_transition, mediaId));
+            }
+        }
+
+        /**
+         * Recycled views should not keep the transition names of a previous item.
+         */
+        private void clearTransitionNames() {
+            ViewCompat.setTransitionName(mImageView, null);
+            if (mCheckView != null) {
+                ViewCompat.setTransitionName(mCheckView, null);
+            }
+        }
+
+    }
+
+    /**
+     * Sample the placeholder color of an item once its thumbnail is decoded.
+     * There is one instance per {@link MediaViewHolder}, bound to the current media id.
+     */
+    private class PlaceholderCallback implements RequestListener<Drawable> {
+
+        long mMediaId;
+        private int mTraceCookie;
+
+        /**
+         * Start an async trace slice that ends when the request finishes, replacing the slice of a previous request
+         */
+        void beginTrace() {
+            endTrace();
+            mTraceCookie = ++sTraceCookie;
+            TraceCompat.beginAsyncSection(TRACE_LOAD_THUMBNAIL, mTraceCookie);
+        }
+
+        private void endTrace() {
+            if (mTraceCookie != 0) {
+                TraceCompat.endAsyncSection(TRACE_LOAD_THUMBNAIL, mTraceCookie);
+                mTraceCookie = 0;
+            }
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+            endTrace();
+            Metrics.onThumbnailLoaded(dataSource);
+            if (mPlaceholderColors != null && resource instanceof BitmapDrawable && !mPlaceholderColors.contains(mMediaId)) {
+                Bitmap bitmap = ((BitmapDrawable) resource).getBitmap();
+                if (PlaceholderColors.canSample(bitmap)) {
+                    mPlaceholderColors.put(mMediaId, PlaceholderColors.sampleColor(bitmap));
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+            endTrace();
+            return false;
+        }
     }
 
     private boolean handleChangeSelection(int position) {
         Uri data = getData(position);
-        if (!isSelected(position)) {
-            if (mSelection.size() == mMaxSelection) {
-                return false;
-            }
-            mSelection.add(data);
+        boolean selected = mSelection.contains(data);
+        if (!mSelection.toggle(data, mMaxSelection)) {
+            return false;
+        }
+        if (selected) {
+            SelectionEvents.onUnselected(getItemId(position), data);
         } else {
-            mSelection.remove(data);
+            SelectionEvents.onSelected(getItemId(position), data);
         }
         return true;
     }
@@ -23,40 +23,60 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Parcelable;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.core.app.SharedElementCallback;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.transition.Transition;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 
+import com.andremion.louvre.FrameStats;
 import com.andremion.louvre.R;
+import com.andremion.louvre.core.DateIndex;
+import com.andremion.louvre.data.MediaCursor;
 import com.andremion.louvre.data.MediaLoader;
+import com.andremion.louvre.data.PlaceholderColors;
 import com.andremion.louvre.preview.PreviewActivity;
+import com.andremion.louvre.util.FastScroller;
+import com.andremion.louvre.util.FrameTracker;
 import com.andremion.louvre.util.ItemOffsetDecoration;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
 import com.andremion.louvre.util.transition.TransitionCallback;
+import com.bumptech.glide.Glide;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 
-public class GalleryFragment extends Fragment implements MediaLoader.Callbacks, GalleryAdapter.Callbacks {
+public class GalleryFragment extends Fragment implements MediaLoader.Callbacks, GalleryAdapter.Callbacks, FastScroller.Callbacks {
+
+    private static final float ZOOM_STEP_SCALE = 1.25f;
+    private static final String SELECTION_STATE = "selection_state";
+    private static final String BUCKET_ID_STATE = "bucket_id_state";
+    private static final String SCROLL_STATE = "scroll_state";
+    private static final String BUCKETS_SCROLL_STATE = "buckets_scroll_state";
+    private static final String VIEWPORT_STATE = "viewport_state";
 
     public interface Callbacks {
 
         void onBucketClick(String label);
 
-        void onMediaClick(@NonNull View imageView, View checkView, long bucketId, int position);
+        void onMediaClick(@NonNull View imageView, @Nullable View checkView, long bucketId, int position);
 
         void onSelectionUpdated(int count);
 
@@ -65,19 +85,25 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         void onWillExceedMaxSelection();
     }
 
-    private final MediaLoader mMediaLoader;
-    private final GalleryAdapter mAdapter;
+    private GalleryViewModel mViewModel;
+    private boolean mViewModelRetained;
+    private MediaLoader mMediaLoader;
+    private GalleryAdapter mAdapter;
     private View mEmptyView;
     private GridLayoutManager mLayoutManager;
     private RecyclerView mRecyclerView;
+    private FastScroller mFastScroller;
+    private FrameTracker mFrameTracker;
     private Callbacks mCallbacks;
-    private boolean mShouldHandleBackPressed;
+    @Nullable
+    private ViewHolderPreInflater mPreInflater;
+    @Nullable
+    private GridDensity mGridDensity;
+    @Nullable
+    private DateIndex mDateIndex;
+    private final Calendar mCalendar = Calendar.getInstance();
 
     public GalleryFragment() {
-        mMediaLoader = new MediaLoader();
-        mAdapter = new GalleryAdapter();
-        mAdapter.setCallbacks(this);
-        setRetainInstance(true);
         setHasOptionsMenu(true);
     }
 
@@ -89,6 +115,10 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         mAdapter.setMaxSelection(maxSelection);
     }
 
+    public void setLightweightCells(boolean lightweightCells) {
+        mAdapter.setLightweightCells(lightweightCells);
+    }
+
     @Override
     public void onAttach(@NonNull Context context) {
         super.onAttach(context);
@@ -99,7 +129,14 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         if (!(context instanceof FragmentActivity)) {
             throw new IllegalArgumentException(context.getClass().getSimpleName() + " must inherit from " + FragmentActivity.class.getName());
         }
+        mViewModel = new ViewModelProvider(this).get(GalleryViewModel.class);
+        mViewModelRetained = mViewModel.mAttached;
+        mViewModel.mAttached = true;
+        mMediaLoader = mViewModel.mMediaLoader;
         mMediaLoader.onAttach((FragmentActivity) context, this);
+        mAdapter = new GalleryAdapter(mViewModel.mSelection);
+        mAdapter.setCallbacks(this);
+        mAdapter.setPlaceholderColors(PlaceholderColors.getInstance(context));
     }
 
     @Override
@@ -131,21 +168,61 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
 
     @Override
     public void onBucketLoadFinished(@Nullable Cursor data) {
+        reportFrames();
+        // Buckets are always displayed in the default density
+        setDensityLevel(0);
+        mDateIndex = null;
         mAdapter.swapData(GalleryAdapter.VIEW_TYPE_BUCKET, data);
+        restoreScrollState();
         getActivity().invalidateOptionsMenu();
         updateEmptyState();
     }
 
     @Override
     public void onMediaLoadFinished(@Nullable Cursor data) {
+        reportFrames();
+        setDensityLevel(mViewModel.mMediaDensityLevel);
+        mDateIndex = data instanceof MediaCursor ? ((MediaCursor) data).getDateIndex() : null;
         mAdapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, data);
+        restoreScrollState();
         getActivity().invalidateOptionsMenu();
         updateEmptyState();
     }
 
+    /**
+     * Restore the scroll state saved for the data being displayed, only on the first delivery after navigating,
+     * so a background revalidation does not move the list.
+     */
+    private void restoreScrollState() {
+        if (!mViewModel.mShouldRestoreScrollState) {
+            return;
+        }
+        mViewModel.mShouldRestoreScrollState = false;
+        if (mViewModel.mPendingScrollState != null) {
+            mLayoutManager.onRestoreInstanceState(mViewModel.mPendingScrollState);
+            mViewModel.mPendingScrollState = null;
+        } else {
+            mLayoutManager.scrollToPosition(0);
+        }
+    }
+
+    /**
+     * Report the scrolling frames of the data and span count being displayed, before they change
+     */
+    private void reportFrames() {
+        mFrameTracker.report(mAdapter.getItemCount(), mLayoutManager.getSpanCount());
+    }
+
     private void updateEmptyState() {
         mRecyclerView.setVisibility(mAdapter.getItemCount() > 0 ? View.VISIBLE : View.INVISIBLE);
         mEmptyView.setVisibility(mAdapter.getItemCount() > 0 ? View.INVISIBLE : View.VISIBLE);
+        mFastScroller.setVisibility(mDateIndex != null ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        PlaceholderColors.getInstance(requireContext()).save();
     }
 
     @Override
@@ -178,17 +255,227 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
                 mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
                 int size = getResources().getDimensionPixelSize(R.dimen.gallery_item_size);
                 int width = mRecyclerView.getMeasuredWidth();
-                int columnCount = width / (size + spacing);
-                mLayoutManager.setSpanCount(columnCount);
+                mGridDensity = new GridDensity(width, size, spacing);
+                if (mAdapter.getItemViewType(0) == GalleryAdapter.VIEW_TYPE_MEDIA) {
+                    mGridDensity.setLevel(mViewModel.mMediaDensityLevel);
+                }
+                applyGridDensity();
+                preInflateViewHolders(mGridDensity.getColumnCount(), size + spacing);
                 return false;
             }
         });
+        setupPinchToZoom();
+
+        mFastScroller = (FastScroller) view.findViewById(R.id.fast_scroller);
+        mFastScroller.attachToRecyclerView(mRecyclerView, this);
+
+        mFrameTracker = new FrameTracker(requireContext(), FrameStats.SOURCE_GALLERY);
+        mFrameTracker.attachToRecyclerView(mRecyclerView);
+
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        if (mViewModelRetained) {
+            // Attach to the data loaded before a configuration change, if the first load was requested already
+            mMediaLoader.reattach();
+        } else if (savedInstanceState != null) {
+            // The process was killed, so the data will be loaded again by loadData()
+            restoreState(savedInstanceState);
+        }
+    }
+
+    /**
+     * Save a compact state to restore the picker after the process is killed:
+     * the selection, the current bucket, the scroll anchor and the items in the viewport.
+     */
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelableArrayList(SELECTION_STATE, new ArrayList<>(mViewModel.mSelection));
+        outState.putLong(BUCKET_ID_STATE, mViewModel.mCurrentBucketId);
+        outState.putParcelable(BUCKETS_SCROLL_STATE, mViewModel.mBucketsScrollState);
+        if (mLayoutManager != null) {
+            outState.putParcelable(SCROLL_STATE, mLayoutManager.onSaveInstanceState());
+            int first = mLayoutManager.findFirstVisibleItemPosition();
+            int last = mLayoutManager.findLastVisibleItemPosition();
+            if (first != RecyclerView.NO_POSITION) {
+                outState.putBundle(VIEWPORT_STATE, mAdapter.saveViewport(first, last - first + 1));
+            }
+        }
+    }
 
-        if (savedInstanceState != null) {
+    /**
+     * Render the previous viewport right away, while the whole data is loaded again
+     */
+    private void restoreState(@NonNull Bundle savedInstanceState) {
+        List<Uri> selection = savedInstanceState.getParcelableArrayList(SELECTION_STATE);
+        if (selection != null) {
+            mViewModel.mSelection.addAll(selection);
+        }
+        Parcelable scrollState = savedInstanceState.getParcelable(SCROLL_STATE);
+        mViewModel.mCurrentBucketId = savedInstanceState.getLong(BUCKET_ID_STATE, GalleryViewModel.NO_BUCKET);
+        if (mViewModel.mCurrentBucketId != GalleryViewModel.NO_BUCKET) {
+            mViewModel.mBucketsScrollState = savedInstanceState.getParcelable(BUCKETS_SCROLL_STATE);
+            mViewModel.mPendingScrollState = scrollState;
+            mViewModel.mShouldRestoreScrollState = true;
+            mViewModel.mShouldHandleBackPressed = true;
+        } else {
+            mViewModel.mBucketsScrollState = scrollState;
+        }
+        Bundle viewport = savedInstanceState.getBundle(VIEWPORT_STATE);
+        if (viewport != null) {
+            mAdapter.restoreViewport(viewport);
             updateEmptyState();
         }
+    }
 
-        return view;
+    /**
+     * @return If the state was kept across a configuration change, so its data was requested already or it will be
+     * once the permission request in flight is answered. Otherwise the fragment is new or the process was killed.
+     */
+    public boolean hasRetainedState() {
+        return mViewModelRetained;
+    }
+
+    /**
+     * Load the bucket displayed before the process was killed, or the initial data otherwise
+     */
+    public void loadData() {
+        if (mViewModel.mCurrentBucketId != GalleryViewModel.NO_BUCKET) {
+            mMediaLoader.loadByBucket(mViewModel.mCurrentBucketId);
+        } else {
+            loadBuckets();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mFrameTracker.stop();
+        reportFrames();
+        if (mPreInflater != null) {
+            mPreInflater.cancel();
+            mPreInflater = null;
+        }
+    }
+
+    /**
+     * Pinching the media grid moves between the {@link GridDensity} levels
+     */
+    private void setupPinchToZoom() {
+        final ScaleGestureDetector scaleGestureDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+
+            private float mScale;
+
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                mScale = 1f;
+                return mGridDensity != null && mAdapter.getItemViewType(0) == GalleryAdapter.VIEW_TYPE_MEDIA;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                mScale *= detector.getScaleFactor();
+                if (mScale < 1f / ZOOM_STEP_SCALE) {
+                    setDensityLevel(mGridDensity.getLevel() + 1);
+                    mViewModel.mMediaDensityLevel = mGridDensity.getLevel();
+                    mScale = 1f;
+                } else if (mScale > ZOOM_STEP_SCALE) {
+                    setDensityLevel(mGridDensity.getLevel() - 1);
+                    mViewModel.mMediaDensityLevel = mGridDensity.getLevel();
+                    mScale = 1f;
+                }
+                return true;
+            }
+        });
+        mRecyclerView.addOnItemTouchListener(new RecyclerView.SimpleOnItemTouchListener() {
+            @Override
+            public boolean onInterceptTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+                scaleGestureDetector.onTouchEvent(e);
+                return scaleGestureDetector.isInProgress();
+            }
+
+            @Override
+            public void onTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+                scaleGestureDetector.onTouchEvent(e);
+            }
+        });
+    }
+
+    private void setDensityLevel(int level) {
+        if (mGridDensity != null && mGridDensity.setLevel(level)) {
+            // Keep the first visible item in place
+            int position = mLayoutManager.findFirstVisibleItemPosition();
+            applyGridDensity();
+            if (position != RecyclerView.NO_POSITION) {
+                mLayoutManager.scrollToPosition(position);
+            }
+        }
+    }
+
+    private void applyGridDensity() {
+        assert mGridDensity != null;
+        if (mLayoutManager.getSpanCount() != mGridDensity.getColumnCount()) {
+            reportFrames();
+        }
+        mLayoutManager.setSpanCount(mGridDensity.getColumnCount());
+        mAdapter.setItemSize(mGridDensity.getItemSize(), mGridDensity.getThumbnailSize());
+    }
+
+    /**
+     * Label the fast scroller bubble with the month and year the item was taken
+     */
+    @Nullable
+    @Override
+    public String getLabel(int position) {
+        if (mDateIndex == null || position >= mDateIndex.getSize() || mDateIndex.dateAt(position) <= 0) {
+            return null;
+        }
+        return DateUtils.formatDateTime(getContext(), mDateIndex.dateAt(position),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NO_MONTH_DAY | DateUtils.FORMAT_SHOW_YEAR);
+    }
+
+    /**
+     * Snap to the newest item of the month, so the grid starts at the month displayed in the bubble
+     */
+    @Override
+    public int getSnapPosition(int position) {
+        if (mDateIndex == null || position >= mDateIndex.getSize() || mDateIndex.dateAt(position) <= 0) {
+            return position;
+        }
+        mCalendar.setTimeInMillis(mDateIndex.dateAt(position));
+        mCalendar.set(Calendar.DAY_OF_MONTH, 1);
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mCalendar.add(Calendar.MONTH, 1);
+        long endOfMonth = mCalendar.getTimeInMillis() - 1;
+        return Math.min(mDateIndex.positionOf(endOfMonth), position);
+    }
+
+    /**
+     * Don't load any image while jumping through the grid, only where the user stops
+     */
+    @Override
+    public void onDragStateChanged(boolean dragging) {
+        if (dragging) {
+            Glide.with(requireActivity()).pauseRequests();
+        } else {
+            Glide.with(requireActivity()).resumeRequests();
+        }
+    }
+
+    /**
+     * Inflate a screen of items while the main thread waits for the query
+     */
+    private void preInflateViewHolders(int columnCount, int rowHeight) {
+        int rowCount = mRecyclerView.getMeasuredHeight() / rowHeight + 1;
+        mPreInflater = new ViewHolderPreInflater(mRecyclerView, mAdapter);
+        mPreInflater.preInflate(columnCount * rowCount, GalleryAdapter.VIEW_TYPE_BUCKET, GalleryAdapter.VIEW_TYPE_MEDIA);
     }
 
     public void onActivityReenter(int resultCode, Intent data) {
@@ -233,7 +520,12 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
                 RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(position);
                 if (holder instanceof GalleryAdapter.MediaViewHolder) {
                     GalleryAdapter.MediaViewHolder mediaViewHolder = (GalleryAdapter.MediaViewHolder) holder;
-                    sharedElementCallback.setSharedElementViews(mediaViewHolder.mImageView, mediaViewHolder.mCheckView);
+                    mediaViewHolder.updateTransitionNames();
+                    if (mediaViewHolder.mCheckView != null) {
+                        sharedElementCallback.setSharedElementViews(mediaViewHolder.mImageView, mediaViewHolder.mCheckView);
+                    } else {
+                        sharedElementCallback.setSharedElementViews(mediaViewHolder.mImageView);
+                    }
                 }
 
                 getActivity().supportStartPostponedEnterTransition();
@@ -245,13 +537,17 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
 
     @Override
     public void onBucketClick(long bucketId, String label) {
+        mViewModel.mBucketsScrollState = mLayoutManager.onSaveInstanceState();
+        mViewModel.mCurrentBucketId = bucketId;
+        mViewModel.mPendingScrollState = mViewModel.mScrollStates.get(bucketId);
+        mViewModel.mShouldRestoreScrollState = true;
         mMediaLoader.loadByBucket(bucketId);
         mCallbacks.onBucketClick(label);
-        mShouldHandleBackPressed = true;
+        mViewModel.mShouldHandleBackPressed = true;
     }
 
     @Override
-    public void onMediaClick(View imageView, View checkView, long bucketId, int position) {
+    public void onMediaClick(View imageView, @Nullable View checkView, long bucketId, int position) {
         mCallbacks.onMediaClick(imageView, checkView, bucketId, position);
     }
 
@@ -276,7 +572,7 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
      * @return If this Fragment handled the back pressed callback
      */
     public boolean onBackPressed() {
-        if (mShouldHandleBackPressed) {
+        if (mViewModel.mShouldHandleBackPressed) {
             loadBuckets();
             return true;
         }
@@ -284,8 +580,21 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
     }
 
     public void loadBuckets() {
+        if (mViewModel.mCurrentBucketId != GalleryViewModel.NO_BUCKET) {
+            mViewModel.mScrollStates.put(mViewModel.mCurrentBucketId, mLayoutManager.onSaveInstanceState());
+            mViewModel.mCurrentBucketId = GalleryViewModel.NO_BUCKET;
+        }
+        mViewModel.mPendingScrollState = mViewModel.mBucketsScrollState;
+        mViewModel.mShouldRestoreScrollState = true;
         mMediaLoader.loadBuckets();
-        mShouldHandleBackPressed = false;
+        mViewModel.mShouldHandleBackPressed = false;
+    }
+
+    /**
+     * @return The size of the thumbnails loaded by the grid
+     */
+    public int getThumbnailSize() {
+        return mAdapter.getLoadedThumbnailSize();
     }
 
     public List<Uri> getSelection() {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.net.Uri;
+import android.os.Parcelable;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+
+import com.andremion.louvre.core.SelectionSet;
+import com.andremion.louvre.data.MediaLoader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of {@link GalleryFragment} that survives configuration changes.
+ * <p>
+ * The loaders are kept by the {@link androidx.loader.app.LoaderManager}, so the {@link MediaLoader} just attaches
+ * to them again and their data is delivered with no query.
+ */
+public class GalleryViewModel extends ViewModel {
+
+    static final long NO_BUCKET = -1;
+
+    private static final int MAX_SCROLL_STATES = 4;
+
+    final MediaLoader mMediaLoader = new MediaLoader();
+    final SelectionSet<Uri> mSelection = new SelectionSet<>();
+    // Set once a fragment is attached to it, so a later fragment knows it comes from a configuration change
+    boolean mAttached;
+    boolean mShouldHandleBackPressed;
+    int mMediaDensityLevel;
+    // Scroll states of the last visited buckets, in access order
+    final Map<Long, Parcelable> mScrollStates = new LinkedHashMap<Long, Parcelable>(MAX_SCROLL_STATES, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<Long, Parcelable> eldest) {
+            return size() > MAX_SCROLL_STATES;
+        }
+    };
+    @Nullable
+    Parcelable mBucketsScrollState;
+    long mCurrentBucketId = NO_BUCKET;
+    boolean mShouldRestoreScrollState;
+    @Nullable
+    Parcelable mPendingScrollState;
+
+}
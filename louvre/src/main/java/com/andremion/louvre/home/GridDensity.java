@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import androidx.annotation.IntRange;
+
+/**
+ * Discrete density levels of the gallery grid.
+ * <p>
+ * The first level is the default grid, based on the item size dimension. The next levels add more columns
+ * up to {@link #MAX_COLUMN_COUNT}. Each level decodes its thumbnails in one of the {@link #THUMBNAIL_SIZES} tiers.
+ */
+class GridDensity {
+
+    static final int MAX_COLUMN_COUNT = 12;
+
+    private static final float COLUMN_STEP = 1.5f;
+    private static final int[] THUMBNAIL_SIZES = {64, 96, 128, 192, 256, 384, 512, 768};
+
+    private final int mWidth;
+    private final int mDefaultItemSize;
+    private final int mSpacing;
+    private final int[] mColumnCounts;
+    private int mLevel;
+    private int mThumbnailSize;
+
+    /**
+     * @param width           The available width of the grid
+     * @param defaultItemSize The item size of the first level
+     * @param spacing         The offset around each item
+     */
+    GridDensity(int width, int defaultItemSize, int spacing) {
+        mWidth = width;
+        mDefaultItemSize = defaultItemSize;
+        mSpacing = spacing;
+
+        int columnCount = Math.max(1, width / (defaultItemSize + spacing));
+        int levelCount = 1;
+        int[] columnCounts = new int[MAX_COLUMN_COUNT];
+        columnCounts[0] = columnCount;
+        while (columnCount < MAX_COLUMN_COUNT) {
+            columnCount = Math.min(MAX_COLUMN_COUNT, (int) Math.ceil(columnCount * COLUMN_STEP));
+            columnCounts[levelCount++] = columnCount;
+        }
+        mColumnCounts = new int[levelCount];
+        System.arraycopy(columnCounts, 0, mColumnCounts, 0, levelCount);
+        mThumbnailSize = pickThumbnailSize(getCellSize(), 0);
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return If the level was changed
+     */
+    boolean setLevel(@IntRange(from = 0) int level) {
+        level = Math.max(0, Math.min(level, mColumnCounts.length - 1));
+        if (level == mLevel) {
+            return false;
+        }
+        mLevel = level;
+        mThumbnailSize = pickThumbnailSize(getCellSize(), mThumbnailSize);
+        return true;
+    }
+
+    int getColumnCount() {
+        return mColumnCounts[mLevel];
+    }
+
+    int getItemSize() {
+        if (mLevel == 0) {
+            return mDefaultItemSize;
+        }
+        return getCellWidth();
+    }
+
+    int getThumbnailSize() {
+        return mThumbnailSize;
+    }
+
+    private int getCellWidth() {
+        return mWidth / getColumnCount() - mSpacing * 2;
+    }
+
+    private int getCellSize() {
+        return Math.max(getCellWidth(), getItemSize());
+    }
+
+    /**
+     * Keep the current tier while it is sharp enough and not too big for the cell,
+     * so a zoom step can reuse the thumbnails already decoded.
+     */
+    private static int pickThumbnailSize(int cellSize, int currentSize) {
+        if (currentSize >= cellSize && currentSize <= cellSize * 2) {
+            return currentSize;
+        }
+        for (int size : THUMBNAIL_SIZES) {
+            if (size >= cellSize) {
+                return size;
+            }
+        }
+        return THUMBNAIL_SIZES[THUMBNAIL_SIZES.length - 1];
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.FloatRange;
+import androidx.appcompat.widget.AppCompatImageView;
+import androidx.core.view.ViewCompat;
+
+import com.andremion.louvre.R;
+
+/**
+ * Lightweight media item for dense grids.
+ * <p>
+ * A single view draws the thumbnail, the selection scale and the check mark straight on the canvas,
+ * instead of inflating an {@link android.widget.ImageView} and a {@link android.widget.CheckedTextView}
+ * with an animated vector drawable.
+ */
+class MediaCellView extends AppCompatImageView {
+
+    private static final int PRESSED_COLOR = 0x33000000;
+    private static final int CHECK_SHADOW_COLOR = 0x66000000;
+
+    private final Paint mCheckPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCheckMarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mCheckMarkPath = new Path();
+    private final Interpolator mInterpolator = new DecelerateInterpolator();
+    private final int mAccentColor;
+    private final int mCheckRadius;
+    private final int mCheckPadding;
+    private final long mAnimationDuration;
+    private boolean mChecked;
+    private float mScale = 1f;
+    private float mStartScale = 1f;
+    private float mTargetScale = 1f;
+    private long mAnimationStartTime;
+    private float mLastTouchX;
+    private float mLastTouchY;
+
+    MediaCellView(Context context) {
+        super(context);
+        setId(R.id.image);
+        setScaleType(ScaleType.CENTER_CROP);
+
+        TypedValue typedValue = new TypedValue();
+        context.getTheme().resolveAttribute(R.attr.colorAccent, typedValue, true);
+        mAccentColor = typedValue.data;
+        mCheckRadius = getResources().getDimensionPixelSize(R.dimen.gallery_item_check_radius);
+        mCheckPadding = getResources().getDimensionPixelSize(R.dimen.gallery_item_check_padding);
+        mAnimationDuration = getResources().getInteger(android.R.integer.config_shortAnimTime);
+
+        mCheckPaint.setStrokeWidth(getResources().getDimension(R.dimen.gallery_item_check_stroke));
+        mCheckMarkPaint.setStyle(Paint.Style.STROKE);
+        mCheckMarkPaint.setStrokeWidth(getResources().getDimension(R.dimen.gallery_item_check_stroke));
+        mCheckMarkPaint.setStrokeCap(Paint.Cap.ROUND);
+        mCheckMarkPaint.setStrokeJoin(Paint.Join.ROUND);
+        mCheckMarkPaint.setColor(Color.WHITE);
+
+        // Check mark path relative to the check center
+        mCheckMarkPath.moveTo(-mCheckRadius * .45f, 0);
+        mCheckMarkPath.lineTo(-mCheckRadius * .1f, mCheckRadius * .35f);
+        mCheckMarkPath.lineTo(mCheckRadius * .5f, -mCheckRadius * .35f);
+    }
+
+    /**
+     * @param scale   The scale of the thumbnail
+     * @param animate If the change should be animated from the current scale
+     */
+    void setChecked(boolean checked, @FloatRange(from = 0, to = 1) float scale, boolean animate) {
+        mChecked = checked;
+        if (animate && mScale != scale) {
+            mStartScale = mScale;
+            mAnimationStartTime = SystemClock.uptimeMillis();
+        } else {
+            mScale = scale;
+            mStartScale = scale;
+        }
+        mTargetScale = scale;
+        invalidate();
+    }
+
+    /**
+     * @return If the last touch hit the check mark area
+     */
+    boolean isCheckTouched() {
+        float size = mCheckPadding * 2 + mCheckRadius * 2;
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        boolean horizontal = rtl ? mLastTouchX >= getWidth() - size : mLastTouchX <= size;
+        return horizontal && mLastTouchY <= size;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mLastTouchX = event.getX();
+            mLastTouchY = event.getY();
+        }
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        invalidate();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        updateScale();
+
+        int saveCount = canvas.save();
+        canvas.scale(mScale, mScale, getWidth() / 2f, getHeight() / 2f);
+        super.draw(canvas);
+        if (isPressed()) {
+            canvas.drawColor(PRESSED_COLOR);
+        }
+        canvas.restoreToCount(saveCount);
+
+        drawCheck(canvas);
+    }
+
+    private void updateScale() {
+        if (mScale == mTargetScale) {
+            return;
+        }
+        float fraction = (SystemClock.uptimeMillis() - mAnimationStartTime) / (float) mAnimationDuration;
+        if (fraction >= 1f) {
+            mScale = mTargetScale;
+        } else {
+            mScale = mStartScale + (mTargetScale - mStartScale) * mInterpolator.getInterpolation(fraction);
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    private void drawCheck(Canvas canvas) {
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        float cx = rtl ? getWidth() - mCheckPadding - mCheckRadius : mCheckPadding + mCheckRadius;
+        float cy = mCheckPadding + mCheckRadius;
+        if (mChecked) {
+            mCheckPaint.setStyle(Paint.Style.FILL);
+            mCheckPaint.setColor(mAccentColor);
+            canvas.drawCircle(cx, cy, mCheckRadius, mCheckPaint);
+            int saveCount = canvas.save();
+            canvas.translate(cx, cy);
+            canvas.drawPath(mCheckMarkPath, mCheckMarkPaint);
+            canvas.restoreToCount(saveCount);
+        } else {
+            mCheckPaint.setStyle(Paint.Style.FILL);
+            mCheckPaint.setColor(CHECK_SHADOW_COLOR);
+            canvas.drawCircle(cx, cy, mCheckRadius, mCheckPaint);
+            mCheckPaint.setStyle(Paint.Style.STROKE);
+            mCheckPaint.setColor(Color.WHITE);
+            canvas.drawCircle(cx, cy, mCheckRadius, mCheckPaint);
+        }
+    }
+
+}
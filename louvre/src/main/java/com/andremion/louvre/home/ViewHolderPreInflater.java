@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Create {@link GalleryAdapter.ViewHolder}s while the main thread is idle and put them into the
+ * {@link RecyclerView.RecycledViewPool}, so the first frames don't need to inflate a full screen of items.
+ * <p>
+ * Views are not thread-safe and inflating against the RecyclerView touches its LayoutManager,
+ * so a single view holder is created on each idle pass of the main thread instead of in background.
+ */
+@MainThread
+class ViewHolderPreInflater {
+
+    private final RecyclerView mRecyclerView;
+    private final GalleryAdapter mAdapter;
+    private boolean mCancelled;
+    private MessageQueue.IdleHandler mIdleHandler;
+
+    ViewHolderPreInflater(@NonNull RecyclerView recyclerView, @NonNull GalleryAdapter adapter) {
+        mRecyclerView = recyclerView;
+        mAdapter = adapter;
+    }
+
+    /**
+     * Pre-inflate enough view holders of each view type to fill the screen
+     *
+     * @param count The amount of items visible at once
+     */
+    void preInflate(@IntRange(from = 0) final int count, @NonNull final int... viewTypes) {
+        final RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        for (int viewType : viewTypes) {
+            pool.setMaxRecycledViews(viewType, count);
+        }
+        if (count == 0 || viewTypes.length == 0) {
+            return;
+        }
+        mIdleHandler = new MessageQueue.IdleHandler() {
+
+            private int mViewTypeIndex;
+            private int mCreatedCount;
+
+            @Override
+            public boolean queueIdle() {
+                if (mCancelled) {
+                    return false;
+                }
+                int viewType = viewTypes[mViewTypeIndex];
+                pool.putRecycledView(mAdapter.createViewHolder(mRecyclerView, viewType));
+                if (++mCreatedCount == count) {
+                    mCreatedCount = 0;
+                    mViewTypeIndex++;
+                }
+                // Keep it while there are view holders left to create
+                return mViewTypeIndex < viewTypes.length;
+            }
+        };
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+
+    void cancel() {
+        mCancelled = true;
+        if (mIdleHandler != null) {
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+            mIdleHandler = null;
+        }
+    }
+
+}
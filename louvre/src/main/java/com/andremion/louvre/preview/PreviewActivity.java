@@ -18,6 +18,7 @@ package com.andremion.louvre.preview;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
@@ -26,11 +27,14 @@ import android.os.Bundle;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.material.snackbar.Snackbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.ActivityOptionsCompat;
+import androidx.core.os.TraceCompat;
 import androidx.core.util.Pair;
 import androidx.core.view.ViewCompat;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.viewpager.widget.ViewPager;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -40,8 +44,12 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.CheckedTextView;
 
+import com.andremion.louvre.FrameStats;
 import com.andremion.louvre.R;
+import com.andremion.louvre.core.SelectionSet;
 import com.andremion.louvre.data.MediaLoader;
+import com.andremion.louvre.util.FrameTracker;
+import com.andremion.louvre.util.Metrics;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
 import com.andremion.louvre.util.transition.TransitionCallback;
 
@@ -59,21 +67,24 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
     private static final String EXTRA_SELECTION = PreviewActivity.class.getPackage().getName() + ".extra.SELECTION";
     private static final String EXTRA_MAX_SELECTION = PreviewActivity.class.getPackage().getName() + ".extra.MAX_SELECTION";
     private static final String EXTRA_MEDIA_TYPE_FILTER = PreviewActivity.class.getPackage().getName() + ".extra.MEDIA_TYPE_FILTER";
+    static final String TRACE_POSTPONE_TRANSITION = "Louvre:postponeEnterTransition";
 
-    public static void startActivity(@NonNull Activity activity, int requestCode, @NonNull View imageView, @NonNull View checkView,
+    public static void startActivity(@NonNull Activity activity, int requestCode, @NonNull View imageView, @Nullable View checkView,
                                      @IntRange(from = 0) long bucketId, @IntRange(from = 0) int position,
                                      List<Uri> selection, int maxSelection, String... mediaTypeFilter) {
 
-        Intent intent = new Intent(activity, PreviewActivity.class);
-        intent.putExtra(EXTRA_BUCKET_ID, bucketId);
-        intent.putExtra(EXTRA_POSITION, position);
-        intent.putExtra(EXTRA_SELECTION, new LinkedList<>(selection));
-        intent.putExtra(EXTRA_MAX_SELECTION, maxSelection);
-        intent.putExtra(EXTRA_MEDIA_TYPE_FILTER, mediaTypeFilter);
-
-        Pair[] sharedElements = concatToSystemSharedElements(activity,
-                Pair.create(imageView, ViewCompat.getTransitionName(imageView)),
-                Pair.create(checkView, ViewCompat.getTransitionName(checkView)));
+        Intent intent = buildIntent(activity, bucketId, position, selection, maxSelection, mediaTypeFilter);
+
+        Pair[] sharedElements;
+        if (checkView != null) {
+            sharedElements = concatToSystemSharedElements(activity,
+                    Pair.create(imageView, ViewCompat.getTransitionName(imageView)),
+                    Pair.create(checkView, ViewCompat.getTransitionName(checkView)));
+        } else {
+            // Lightweight gallery items draw their check mark, so there is no view to share
+            sharedElements = concatToSystemSharedElements(activity,
+                    Pair.create(imageView, ViewCompat.getTransitionName(imageView)));
+        }
 
         //noinspection unchecked
         ActivityOptionsCompat options = ActivityOptionsCompat
@@ -81,6 +92,18 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
         ActivityCompat.startActivityForResult(activity, intent, requestCode, options.toBundle());
     }
 
+    @VisibleForTesting
+    static Intent buildIntent(@NonNull Context context, @IntRange(from = 0) long bucketId, @IntRange(from = 0) int position,
+                              List<Uri> selection, int maxSelection, String... mediaTypeFilter) {
+        Intent intent = new Intent(context, PreviewActivity.class);
+        intent.putExtra(EXTRA_BUCKET_ID, bucketId);
+        intent.putExtra(EXTRA_POSITION, position);
+        intent.putExtra(EXTRA_SELECTION, new LinkedList<>(selection));
+        intent.putExtra(EXTRA_MAX_SELECTION, maxSelection);
+        intent.putExtra(EXTRA_MEDIA_TYPE_FILTER, mediaTypeFilter);
+        return intent;
+    }
+
     @SafeVarargs
     private static Pair[] concatToSystemSharedElements(@NonNull Activity activity, @NonNull Pair<View, String>... activitySharedElements) {
 
@@ -115,10 +138,15 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
         return (List<Uri>) data.getExtras().get(EXTRA_SELECTION);
     }
 
+    private PreviewViewModel mViewModel;
     private MediaLoader mMediaLoader;
     private PreviewAdapter mAdapter;
     private ViewPager mViewPager;
+    private FrameTracker mFrameTracker;
     private CheckedTextView mCheckbox;
+    // The activity may be recreated while the transition is still postponed, so each instance traces its own slice
+    private final int mTransitionTraceCookie = System.identityHashCode(this);
+    private boolean mTransitionTraceOpen;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -135,12 +163,23 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
 
         // Postpone transition until the image of ViewPager's initial item is loaded
         supportPostponeEnterTransition();
+        TraceCompat.beginAsyncSection(TRACE_POSTPONE_TRANSITION, mTransitionTraceCookie);
+        mTransitionTraceOpen = true;
+        Metrics.onTransitionPostponed();
 
         MediaSharedElementCallback sharedElementCallback = new MediaSharedElementCallback();
         setEnterSharedElementCallback(sharedElementCallback);
 
-        //noinspection unchecked
-        List<Uri> selection = (List<Uri>) getIntent().getExtras().get(EXTRA_SELECTION);
+        mViewModel = new ViewModelProvider(this).get(PreviewViewModel.class);
+        boolean restored = mViewModel.mSelection != null;
+        if (!restored) {
+            // The saved state is more recent than the intent if the process was killed
+            Bundle state = savedInstanceState != null ? savedInstanceState : getIntent().getExtras();
+            //noinspection unchecked
+            mViewModel.mSelection = new SelectionSet<>((List<Uri>) state.get(EXTRA_SELECTION));
+            mViewModel.mPosition = state.getInt(EXTRA_POSITION);
+        }
+        SelectionSet<Uri> selection = mViewModel.mSelection;
         assert selection != null;
         int maxSelection = getIntent().getExtras().getInt(EXTRA_MAX_SELECTION);
 
@@ -158,15 +197,27 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
 
         mViewPager = (ViewPager) findViewById(R.id.view_pager);
         mViewPager.setAdapter(mAdapter);
+        mViewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                mViewModel.mPosition = position;
+            }
+        });
+        mFrameTracker = new FrameTracker(this, FrameStats.SOURCE_PREVIEW);
+        mFrameTracker.attachToViewPager(mViewPager);
 
-        mMediaLoader = new MediaLoader();
+        mMediaLoader = mViewModel.mMediaLoader;
         mMediaLoader.onAttach(this, this);
-        if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
-            mMediaLoader.setMediaTypes(getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
+        if (restored) {
+            // The data loaded before the configuration change is delivered again with no query
+            mMediaLoader.reattach();
+        } else {
+            if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
+                mMediaLoader.setMediaTypes(getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
+            }
+            long bucketId = getIntent().getExtras().getLong(EXTRA_BUCKET_ID);
+            mMediaLoader.loadByBucket(bucketId);
         }
-
-        long bucketId = getIntent().getExtras().getLong(EXTRA_BUCKET_ID);
-        mMediaLoader.loadByBucket(bucketId);
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
@@ -223,6 +274,21 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
         Snackbar.make(mViewPager, R.string.activity_gallery_max_selection_reached, Snackbar.LENGTH_SHORT).show();
     }
 
+    @Override
+    public void onEnterTransitionStarted() {
+        if (mTransitionTraceOpen) {
+            endTransitionTrace();
+            Metrics.onTransitionStarted();
+        }
+    }
+
+    private void endTransitionTrace() {
+        if (mTransitionTraceOpen) {
+            TraceCompat.endAsyncSection(TRACE_POSTPONE_TRANSITION, mTransitionTraceCookie);
+            mTransitionTraceOpen = false;
+        }
+    }
+
     @Override
     public void finish() {
         setResult();
@@ -235,20 +301,33 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
         super.finishAfterTransition();
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putSerializable(EXTRA_SELECTION, new LinkedList<>(mAdapter.getSelection()));
+        outState.putInt(EXTRA_POSITION, mViewModel.mPosition);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        endTransitionTrace();
         mMediaLoader.onDetach();
+        mFrameTracker.stop();
+        mFrameTracker.report(mAdapter.getCount(), 1);
     }
 
     private void swapData(@Nullable Cursor data) {
-        int position = getIntent().getExtras().getInt(EXTRA_POSITION);
-
+        // Later data changes keep the current page
+        boolean initialData = mAdapter.getCount() == 0;
         mAdapter.swapData(data);
-        mAdapter.setInitialPosition(position);
-        mViewPager.setCurrentItem(position, false);
+        if (initialData) {
+            int position = mViewModel.mPosition;
+            mAdapter.setInitialPosition(position);
+            mViewPager.setCurrentItem(position, false);
 
-        setCheckboxTransitionName(position);
+            setCheckboxTransitionName(position);
+        }
     }
 
     private void setResult() {
@@ -263,9 +342,9 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
     }
 
     private void setCheckboxTransitionName(int position) {
-        Uri uri = mAdapter.getData(position);
-        if (uri != null) {
-            String checkboxTransitionName = getString(R.string.activity_gallery_checkbox_transition, uri.toString());
+        long mediaId = mAdapter.getItemId(position);
+        if (mediaId != View.NO_ID) {
+            String checkboxTransitionName = getString(R.string.activity_gallery_checkbox_transition, String.valueOf(mediaId));
             ViewCompat.setTransitionName(mCheckbox, checkboxTransitionName);
         }
     }
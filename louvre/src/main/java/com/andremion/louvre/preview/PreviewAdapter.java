@@ -29,12 +29,17 @@ import android.widget.ImageView;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
 import androidx.core.view.ViewCompat;
 import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewpager.widget.PagerAdapter;
 
 import com.andremion.louvre.R;
+import com.andremion.louvre.core.SelectionSet;
+import com.andremion.louvre.data.MediaCursor;
+import com.andremion.louvre.data.MediaQuery;
+import com.andremion.louvre.util.SelectionEvents;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.DataSource;
@@ -43,7 +48,6 @@ import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
 
-import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -56,23 +60,29 @@ class PreviewAdapter extends PagerAdapter {
         void onCheckedUpdated(boolean checked);
 
         void onMaxSelectionReached();
+
+        void onEnterTransitionStarted();
     }
 
+    private static final String TRACE_INSTANTIATE_ITEM = "Louvre:PreviewAdapter.instantiateItem";
+
     private final FragmentActivity mActivity;
     private final LayoutInflater mInflater;
     private final CheckedTextView mCheckbox;
     private final MediaSharedElementCallback mSharedElementCallback;
-    private final List<Uri> mSelection;
+    private final SelectionSet<Uri> mSelection;
     @Nullable
     private PreviewAdapter.Callbacks mCallbacks;
     private int mMaxSelection;
     private int mInitialPosition;
     @Nullable
     private Cursor mData;
+    @Nullable
+    private long[] mItemIds;
     private boolean mDontAnimate;
     private int mCurrentPosition = RecyclerView.NO_POSITION;
 
-    PreviewAdapter(@NonNull FragmentActivity activity, @NonNull CheckedTextView checkbox, @NonNull MediaSharedElementCallback sharedElementCallback, @NonNull List<Uri> selection) {
+    PreviewAdapter(@NonNull FragmentActivity activity, @NonNull CheckedTextView checkbox, @NonNull MediaSharedElementCallback sharedElementCallback, @NonNull SelectionSet<Uri> selection) {
         mActivity = activity;
         mInflater = LayoutInflater.from(activity);
         mCheckbox = checkbox;
@@ -93,9 +103,13 @@ class PreviewAdapter extends PagerAdapter {
         mInitialPosition = position;
     }
 
+    /**
+     * The pages that are still there are kept, see {@link #getItemPosition(Object)}
+     */
     void swapData(Cursor data) {
         if (data != mData) {
             mData = data;
+            mItemIds = data instanceof MediaCursor ? ((MediaCursor) data).getIds() : null;
             notifyDataSetChanged();
         }
     }
@@ -114,8 +128,19 @@ class PreviewAdapter extends PagerAdapter {
 
     @Override
     public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        TraceCompat.beginSection(TRACE_INSTANTIATE_ITEM);
+        try {
+            return createItem(container, position);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private ViewHolder createItem(@NonNull ViewGroup container, int position) {
         View view = mInflater.inflate(R.layout.page_item_preview, container, false);
         ViewHolder holder = new ViewHolder(view);
+        holder.mediaId = getItemId(position);
+        holder.position = position;
         Uri data = getData(position);
         onViewBound(holder, position, data);
         container.addView(holder.itemView);
@@ -125,14 +150,16 @@ class PreviewAdapter extends PagerAdapter {
     @Nullable
     Uri getData(int position) {
         if (mData != null && !mData.isClosed()) {
-            mData.moveToPosition(position);
-            return Uri.fromFile(new File(mData.getString(mData.getColumnIndex(MediaStore.Images.Media.DATA))));
+            return MediaQuery.getMediaUri(getItemId(position));
         }
         return null;
     }
 
-    private long getItemId(int position) {
+    long getItemId(int position) {
         if (mData != null && !mData.isClosed()) {
+            if (mItemIds != null) {
+                return mItemIds[position];
+            }
             mData.moveToPosition(position);
             return mData.getLong(mData.getColumnIndex(MediaStore.Images.Media._ID));
         }
@@ -140,7 +167,7 @@ class PreviewAdapter extends PagerAdapter {
     }
 
     private void onViewBound(ViewHolder holder, int position, Uri data) {
-        String imageTransitionName = holder.imageView.getContext().getString(R.string.activity_gallery_image_transition, data.toString());
+        String imageTransitionName = holder.imageView.getContext().getString(R.string.activity_gallery_image_transition, String.valueOf(getItemId(position)));
         ViewCompat.setTransitionName(holder.imageView, imageTransitionName);
 
         RequestOptions options = new RequestOptions()
@@ -164,6 +191,9 @@ class PreviewAdapter extends PagerAdapter {
     private void startPostponedEnterTransition(int position) {
         if (position == mInitialPosition) {
             mActivity.supportStartPostponedEnterTransition();
+            if (mCallbacks != null) {
+                mCallbacks.onEnterTransitionStarted();
+            }
         }
     }
 
@@ -178,6 +208,26 @@ class PreviewAdapter extends PagerAdapter {
         }
     }
 
+    /**
+     * Find the page by its media id, so a data change only moves it instead of recreating it.
+     */
+    @Override
+    public int getItemPosition(@NonNull Object object) {
+        ViewHolder holder = (ViewHolder) object;
+        if (holder.position < getCount() && getItemId(holder.position) == holder.mediaId) {
+            return POSITION_UNCHANGED;
+        }
+        if (mItemIds != null) {
+            for (int position = 0; position < mItemIds.length; position++) {
+                if (mItemIds[position] == holder.mediaId) {
+                    holder.position = position;
+                    return position;
+                }
+            }
+        }
+        return POSITION_NONE;
+    }
+
     @Override
     public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
         return object instanceof ViewHolder
@@ -210,13 +260,14 @@ class PreviewAdapter extends PagerAdapter {
 
     private boolean handleChangeSelection(int position) {
         Uri data = getData(position);
-        if (!isSelected(position)) {
-            if (mSelection.size() == mMaxSelection) {
-                return false;
-            }
-            mSelection.add(data);
+        boolean selected = mSelection.contains(data);
+        if (!mSelection.toggle(data, mMaxSelection)) {
+            return false;
+        }
+        if (selected) {
+            SelectionEvents.onUnselected(getItemId(position), data);
         } else {
-            mSelection.remove(data);
+            SelectionEvents.onSelected(getItemId(position), data);
         }
         return true;
     }
@@ -225,6 +276,8 @@ class PreviewAdapter extends PagerAdapter {
 
         final View itemView;
         final ImageView imageView;
+        long mediaId;
+        int position;
 
         ViewHolder(View view) {
             itemView = view;
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.preview;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+
+import com.andremion.louvre.core.SelectionSet;
+import com.andremion.louvre.data.MediaLoader;
+
+import static androidx.recyclerview.widget.RecyclerView.NO_POSITION;
+
+/**
+ * State of {@link PreviewActivity} that survives configuration changes.
+ */
+public class PreviewViewModel extends ViewModel {
+
+    final MediaLoader mMediaLoader = new MediaLoader();
+    @Nullable
+    SelectionSet<Uri> mSelection;
+    int mPosition = NO_POSITION;
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.load.resource.bitmap.TransformationUtils;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link ResourceDecoder} that decodes the thumbnail embedded in the EXIF segment of JPEG files.
+ * <p>
+ * Only the header of the file is read. If there is no embedded thumbnail or it is not big enough
+ * for the requested size, it returns {@code null} so Glide falls back to the regular decoders.
+ * It is registered by {@link LouvreGlideModule} and only handles the requests with {@link #ENABLED},
+ * so the other loads of the app are not affected.
+ */
+public class ExifThumbnailDecoder implements ResourceDecoder<InputStream, Bitmap> {
+
+    /**
+     * Enables this decoder for a request. Grid cells are the only requests that can afford the
+     * low resolution of the embedded thumbnail.
+     */
+    public static final Option<Boolean> ENABLED = Option.memory(ExifThumbnailDecoder.class.getName() + ".Enabled", false);
+
+    private static final int SOI = 0xFFD8;
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    // Most encoders write APP1 right after SOI, maybe preceded by APP0 (JFIF).
+    // We give up if it does not show up in the first few segments.
+    private static final int MAX_SEGMENTS_TO_SCAN = 4;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    private static final int IFD_ENTRY_SIZE = 12;
+
+    private final BitmapPool mBitmapPool;
+    private final ArrayPool mArrayPool;
+
+    ExifThumbnailDecoder(@NonNull BitmapPool bitmapPool, @NonNull ArrayPool arrayPool) {
+        mBitmapPool = bitmapPool;
+        mArrayPool = arrayPool;
+    }
+
+    @Override
+    public boolean handles(@NonNull InputStream source, @NonNull Options options) throws IOException {
+        //noinspection ConstantConditions
+        return options.get(ENABLED) && readUnsignedShort(source) == SOI;
+    }
+
+    @Nullable
+    @Override
+    public Resource<Bitmap> decode(@NonNull InputStream source, int width, int height, @NonNull Options options) throws IOException {
+        if (width == Target.SIZE_ORIGINAL || height == Target.SIZE_ORIGINAL) {
+            return null;
+        }
+        if (readUnsignedShort(source) != SOI) {
+            return null;
+        }
+        for (int segment = 0; segment < MAX_SEGMENTS_TO_SCAN; segment++) {
+            if (source.read() != MARKER_PREFIX) {
+                return null;
+            }
+            int marker = source.read();
+            while (marker == MARKER_PREFIX) { // Skip fill bytes
+                marker = source.read();
+            }
+            if (marker == -1 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null;
+            }
+            int length = readUnsignedShort(source) - 2;
+            if (length < 0) {
+                return null;
+            }
+            if (marker == MARKER_APP1) {
+                byte[] segmentData = mArrayPool.get(length, byte[].class);
+                try {
+                    if (readFully(source, segmentData, length) && isExif(segmentData, length)) {
+                        return decodeExifThumbnail(segmentData, length, width, height);
+                    }
+                } finally {
+                    mArrayPool.put(segmentData);
+                }
+            } else if (!skipFully(source, length)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walk through the TIFF structure looking for the orientation in IFD0 and the embedded thumbnail in IFD1.
+     */
+    @Nullable
+    private Resource<Bitmap> decodeExifThumbnail(byte[] data, int length, int width, int height) {
+        int tiff = EXIF_HEADER.length;
+        if (tiff + 8 > length) {
+            return null;
+        }
+        boolean littleEndian;
+        if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+        int ifd0 = getInt(data, tiff + 4, littleEndian);
+        int ifd0Count = getIfdEntryCount(data, tiff, length, ifd0, littleEndian);
+        if (ifd0Count < 0) {
+            return null;
+        }
+        int orientation = 1;
+        for (int i = 0; i < ifd0Count; i++) {
+            int entry = tiff + ifd0 + 2 + i * IFD_ENTRY_SIZE;
+            if (getShort(data, entry, littleEndian) == TAG_ORIENTATION) {
+                orientation = getShort(data, entry + 8, littleEndian);
+            }
+        }
+        int nextIfdOffset = tiff + ifd0 + 2 + ifd0Count * IFD_ENTRY_SIZE;
+        if (nextIfdOffset + 4 > length) {
+            return null;
+        }
+        int ifd1 = getInt(data, nextIfdOffset, littleEndian);
+        int ifd1Count = getIfdEntryCount(data, tiff, length, ifd1, littleEndian);
+        if (ifd1 == 0 || ifd1Count < 0) {
+            return null;
+        }
+        int thumbnailOffset = 0;
+        int thumbnailLength = 0;
+        for (int i = 0; i < ifd1Count; i++) {
+            int entry = tiff + ifd1 + 2 + i * IFD_ENTRY_SIZE;
+            int tag = getShort(data, entry, littleEndian);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+                thumbnailOffset = getInt(data, entry + 8, littleEndian);
+            } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                thumbnailLength = getInt(data, entry + 8, littleEndian);
+            }
+        }
+        int thumbnailStart = tiff + thumbnailOffset;
+        if (thumbnailOffset <= 0 || thumbnailLength <= 0 || thumbnailStart + thumbnailLength > length) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, thumbnailStart, thumbnailLength, options);
+        boolean rotated = TransformationUtils.isExifOrientationRequired(orientation) && orientation >= 5;
+        int thumbnailWidth = rotated ? options.outHeight : options.outWidth;
+        int thumbnailHeight = rotated ? options.outWidth : options.outHeight;
+        // The thumbnail is center cropped into the cell, so it needs to cover both dimensions
+        if (thumbnailWidth < width || thumbnailHeight < height) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, thumbnailStart, thumbnailLength, options);
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap oriented = TransformationUtils.rotateImageExif(mBitmapPool, bitmap, orientation);
+        if (oriented != bitmap) {
+            mBitmapPool.put(bitmap);
+        }
+        return BitmapResource.obtain(oriented, mBitmapPool);
+    }
+
+    private static int getIfdEntryCount(byte[] data, int tiff, int length, int ifd, boolean littleEndian) {
+        if (ifd < 8 || tiff + ifd + 2 > length) {
+            return -1;
+        }
+        int count = getShort(data, tiff + ifd, littleEndian);
+        if (tiff + ifd + 2 + count * IFD_ENTRY_SIZE > length) {
+            return -1;
+        }
+        return count;
+    }
+
+    private static boolean isExif(byte[] data, int length) {
+        if (length < EXIF_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (data[i] != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int getInt(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        int b2 = data[offset + 2] & 0xFF;
+        int b3 = data[offset + 3] & 0xFF;
+        return littleEndian
+                ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0
+                : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+    }
+
+    private static int readUnsignedShort(InputStream source) throws IOException {
+        int b0 = source.read();
+        int b1 = source.read();
+        if (b0 == -1 || b1 == -1) {
+            return -1;
+        }
+        return (b0 << 8) | b1;
+    }
+
+    private static boolean readFully(InputStream source, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = source.read(buffer, read, length - read);
+            if (count == -1) {
+                return false;
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    private static boolean skipFully(InputStream source, long length) throws IOException {
+        while (length > 0) {
+            long skipped = source.skip(length);
+            if (skipped <= 0) {
+                return false;
+            }
+            length -= skipped;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.andremion.louvre.R;
+
+/**
+ * Draggable scroller for long {@link RecyclerView}s, displaying a label bubble while dragging.
+ * <p>
+ * Dragging jumps straight to the target position through {@link LinearLayoutManager#scrollToPositionWithOffset(int, int)},
+ * so the items in between are never laid out nor bound.
+ * <p>
+ * It lies over the whole list, so only a touch on the thumb starts a drag, any other touch goes to the list below.
+ */
+public class FastScroller extends View {
+
+    public interface Callbacks {
+
+        /**
+         * @return The label to display for the item at the given position
+         */
+        @Nullable
+        String getLabel(int position);
+
+        /**
+         * @return The position to jump to when the thumb is dragged over the given position
+         */
+        int getSnapPosition(int position);
+
+        void onDragStateChanged(boolean dragging);
+    }
+
+    // Only worth it for lists longer than a few pages
+    private static final int MIN_PAGES = 4;
+
+    private final Paint mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mRect = new RectF();
+    private int mThumbWidth;
+    private int mThumbHeight;
+    private int mTouchWidth;
+    private int mBubblePadding;
+    private int mTouchSlop;
+    @Nullable
+    private RecyclerView mRecyclerView;
+    @Nullable
+    private Callbacks mCallbacks;
+    private float mFraction;
+    private boolean mDragging;
+    // From the touch to the thumb center, so the thumb doesn't jump under the finger when the drag starts
+    private float mDragOffset;
+    private int mPosition = RecyclerView.NO_POSITION;
+    @Nullable
+    private String mLabel;
+
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (!mDragging) {
+                int scrollRange = recyclerView.computeVerticalScrollRange() - recyclerView.computeVerticalScrollExtent();
+                mFraction = scrollRange > 0 ? (float) recyclerView.computeVerticalScrollOffset() / scrollRange : 0;
+                invalidate();
+            }
+        }
+    };
+
+    public FastScroller(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public FastScroller(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    private void init(Context context) {
+        mThumbWidth = getResources().getDimensionPixelSize(R.dimen.gallery_fast_scroller_thumb_width);
+        mThumbHeight = getResources().getDimensionPixelSize(R.dimen.gallery_fast_scroller_thumb_height);
+        mTouchWidth = getResources().getDimensionPixelSize(R.dimen.gallery_fast_scroller_touch_width);
+        mBubblePadding = getResources().getDimensionPixelSize(R.dimen.gallery_fast_scroller_bubble_padding);
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+
+        TypedValue typedValue = new TypedValue();
+        context.getTheme().resolveAttribute(R.attr.colorAccent, typedValue, true);
+        mThumbPaint.setColor(typedValue.data);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(getResources().getDimension(R.dimen.gallery_fast_scroller_bubble_text_size));
+    }
+
+    public void attachToRecyclerView(@NonNull RecyclerView recyclerView, @NonNull Callbacks callbacks) {
+        if (mRecyclerView != null) {
+            mRecyclerView.removeOnScrollListener(mScrollListener);
+        }
+        mRecyclerView = recyclerView;
+        mCallbacks = callbacks;
+        mRecyclerView.addOnScrollListener(mScrollListener);
+    }
+
+    private boolean isScrollable() {
+        return mRecyclerView != null && mRecyclerView.getLayoutManager() instanceof LinearLayoutManager
+                && mRecyclerView.computeVerticalScrollRange() > mRecyclerView.computeVerticalScrollExtent() * MIN_PAGES;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mDragging && !isScrollable()) {
+            return;
+        }
+        float thumbTop = getThumbTop();
+        mRect.set(getWidth() - mThumbWidth, thumbTop, getWidth(), thumbTop + mThumbHeight);
+        canvas.drawRoundRect(mRect, mThumbWidth / 2f, mThumbWidth / 2f, mThumbPaint);
+
+        if (mDragging && mLabel != null) {
+            float textWidth = mTextPaint.measureText(mLabel);
+            float bubbleHeight = mTextPaint.getTextSize() + mBubblePadding * 2;
+            float bubbleRight = getWidth() - mTouchWidth;
+            float bubbleTop = Math.max(0, thumbTop + (mThumbHeight - bubbleHeight) / 2);
+            mRect.set(bubbleRight - textWidth - mBubblePadding * 2, bubbleTop, bubbleRight, bubbleTop + bubbleHeight);
+            canvas.drawRoundRect(mRect, bubbleHeight / 2, bubbleHeight / 2, mThumbPaint);
+            canvas.drawText(mLabel, mRect.left + mBubblePadding, mRect.bottom - mBubblePadding - mTextPaint.descent(), mTextPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (!isScrollable() || !isOnThumb(event.getX(), event.getY())) {
+                    // Let the RecyclerView below handle it
+                    return false;
+                }
+                mDragging = true;
+                mDragOffset = event.getY() - (getThumbTop() + mThumbHeight / 2f);
+                mLabel = null;
+                getParent().requestDisallowInterceptTouchEvent(true);
+                if (mCallbacks != null) {
+                    mCallbacks.onDragStateChanged(true);
+                }
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging) {
+                    scrollTo(event.getY() - mDragOffset);
+                    return true;
+                }
+                return false;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mDragging) {
+                    mDragging = false;
+                    mPosition = RecyclerView.NO_POSITION;
+                    if (mCallbacks != null) {
+                        mCallbacks.onDragStateChanged(false);
+                    }
+                    invalidate();
+                    return true;
+                }
+                return false;
+            default:
+                return mDragging;
+        }
+    }
+
+    private float getThumbTop() {
+        return mFraction * (getHeight() - mThumbHeight);
+    }
+
+    /**
+     * @return If the touch is on the thumb, give or take the touch slop, and within the touch width of the edge
+     */
+    private boolean isOnThumb(float x, float y) {
+        float thumbTop = getThumbTop();
+        return x >= getWidth() - Math.max(mTouchWidth, mThumbWidth + mTouchSlop)
+                && y >= thumbTop - mTouchSlop
+                && y <= thumbTop + mThumbHeight + mTouchSlop;
+    }
+
+    /**
+     * @param y Where the center of the thumb goes
+     */
+    private void scrollTo(float y) {
+        assert mRecyclerView != null && mCallbacks != null;
+        RecyclerView.Adapter adapter = mRecyclerView.getAdapter();
+        int itemCount = adapter != null ? adapter.getItemCount() : 0;
+        if (itemCount == 0) {
+            return;
+        }
+        mFraction = Math.max(0, Math.min(1, (y - mThumbHeight / 2f) / (getHeight() - mThumbHeight)));
+        int position = mCallbacks.getSnapPosition(Math.round(mFraction * (itemCount - 1)));
+        if (position != mPosition) {
+            mPosition = position;
+            mLabel = mCallbacks.getLabel(position);
+            ((LinearLayoutManager) mRecyclerView.getLayoutManager()).scrollToPositionWithOffset(position, 0);
+        }
+        invalidate();
+    }
+
+}
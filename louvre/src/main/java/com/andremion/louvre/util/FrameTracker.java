@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.Context;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager.widget.ViewPager;
+
+import com.andremion.louvre.FrameStats;
+
+import java.util.Arrays;
+
+/**
+ * Collect the frame times while a list is scrolling, through {@link Choreographer} frame callbacks,
+ * and report them as {@link FrameStats} to the {@link Metrics}.
+ * <p>
+ * Nothing is collected when there is no metrics listener. Frame times are kept in a histogram of milliseconds,
+ * so a long session does not grow the memory.
+ */
+public class FrameTracker implements Choreographer.FrameCallback {
+
+    private static final int MAX_FRAME_MILLIS = 250;
+    private static final float JANK_FACTOR = 1.5f;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final String mSource;
+    private final float mFrameIntervalMillis;
+    private final long mJankThresholdNanos;
+    // Frame count by duration in milliseconds, the last slot counts the longer ones
+    private final int[] mHistogram = new int[MAX_FRAME_MILLIS + 1];
+    private int mFrameCount;
+    private int mJankCount;
+    private long mLastFrameTimeNanos;
+    private boolean mTracking;
+
+    public FrameTracker(@NonNull Context context, @NonNull @FrameStats.Source String source) {
+        mSource = source;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager != null ? windowManager.getDefaultDisplay().getRefreshRate() : 60f;
+        mFrameIntervalMillis = 1000f / refreshRate;
+        mJankThresholdNanos = (long) (mFrameIntervalMillis * JANK_FACTOR * NANOS_PER_MILLI);
+    }
+
+    public void attachToRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                setScrolling(newState != RecyclerView.SCROLL_STATE_IDLE);
+            }
+        });
+    }
+
+    public void attachToViewPager(@NonNull ViewPager viewPager) {
+        viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageScrollStateChanged(int state) {
+                setScrolling(state != ViewPager.SCROLL_STATE_IDLE);
+            }
+        });
+    }
+
+    private void setScrolling(boolean scrolling) {
+        if (scrolling && !mTracking && Metrics.isEnabled()) {
+            mTracking = true;
+            mLastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else if (!scrolling && mTracking) {
+            stop();
+        }
+    }
+
+    public void stop() {
+        mTracking = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mTracking) {
+            return;
+        }
+        if (mLastFrameTimeNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameTimeNanos;
+            mHistogram[(int) Math.min(MAX_FRAME_MILLIS, frameNanos / NANOS_PER_MILLI)]++;
+            mFrameCount++;
+            if (frameNanos > mJankThresholdNanos) {
+                mJankCount++;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Report the frames collected so far, if any, and start over
+     *
+     * @param itemCount The item count of the list the frames were collected on
+     * @param spanCount The span count of the list the frames were collected on
+     */
+    public void report(@IntRange(from = 0) int itemCount, @IntRange(from = 1) int spanCount) {
+        if (mFrameCount == 0) {
+            return;
+        }
+        Metrics.onScrollFrames(new FrameStats(mSource, itemCount, spanCount, mFrameCount, mJankCount, mFrameIntervalMillis,
+                percentile(50), percentile(90), percentile(99)));
+        mFrameCount = 0;
+        mJankCount = 0;
+        Arrays.fill(mHistogram, 0);
+    }
+
+    private int percentile(int percent) {
+        int target = (int) Math.ceil(mFrameCount * percent / 100d);
+        int count = 0;
+        for (int millis = 0; millis < mHistogram.length; millis++) {
+            count += mHistogram[millis];
+            if (count >= target) {
+                return millis;
+            }
+        }
+        return MAX_FRAME_MILLIS;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.module.LibraryGlideModule;
+
+import java.io.InputStream;
+
+/**
+ * Register the decoders of the picker when Glide is initialized, since the {@link Registry} must not change after that.
+ * <p>
+ * It is picked up by the {@link com.bumptech.glide.module.AppGlideModule} of the app. Without one the picker still
+ * works, just without the fast path of {@link ExifThumbnailDecoder}.
+ */
+@GlideModule
+public final class LouvreGlideModule extends LibraryGlideModule {
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        // Tried before the default bitmap decoders
+        registry.prepend(Registry.BUCKET_BITMAP, InputStream.class, Bitmap.class,
+                new ExifThumbnailDecoder(glide.getBitmapPool(), glide.getArrayPool()));
+    }
+
+}
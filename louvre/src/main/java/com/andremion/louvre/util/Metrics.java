@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.andremion.louvre.FrameStats;
+import com.andremion.louvre.MetricsListener;
+import com.bumptech.glide.load.DataSource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measure the picker and report to the {@link MetricsListener}, if any.
+ * Every method is cheap enough to be called when there is no listener.
+ * Hosts set the listener through {@link com.andremion.louvre.Louvre#setMetricsListener(MetricsListener)}.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class Metrics {
+
+    private static final long NOT_STARTED = 0;
+
+    @Nullable
+    private static volatile MetricsListener sListener;
+    private static volatile long sPermissionGrantedTime = NOT_STARTED;
+    private static volatile long sPickerOpenedTime = NOT_STARTED;
+    private static volatile long sTransitionPostponedTime = NOT_STARTED;
+    private static final AtomicInteger sMemoryHits = new AtomicInteger();
+    private static final AtomicInteger sDiskHits = new AtomicInteger();
+    private static final AtomicInteger sMisses = new AtomicInteger();
+
+    private Metrics() {
+    }
+
+    public static void setListener(@Nullable MetricsListener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * @return If there is a listener, so it is worth collecting data that is not cheap
+     */
+    public static boolean isEnabled() {
+        return sListener != null;
+    }
+
+    public static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    public static void onPickerOpened() {
+        sPickerOpenedTime = now();
+        sMemoryHits.set(0);
+        sDiskHits.set(0);
+        sMisses.set(0);
+    }
+
+    public static void onPermissionGranted() {
+        sPermissionGrantedTime = now();
+    }
+
+    public static void onBucketsQueryFinished(long startTime, int rowCount) {
+        MetricsListener listener = sListener;
+        if (listener == null) {
+            return;
+        }
+        long time = now();
+        listener.onBucketsQueryFinished(time - startTime, rowCount);
+        onFirstQueryFinished(listener, time);
+    }
+
+    public static void onMediaQueryFinished(long bucketId, long startTime, int rowCount) {
+        MetricsListener listener = sListener;
+        if (listener == null) {
+            return;
+        }
+        long time = now();
+        listener.onMediaQueryFinished(bucketId, time - startTime, rowCount);
+        onFirstQueryFinished(listener, time);
+    }
+
+    private static void onFirstQueryFinished(@NonNull MetricsListener listener, long time) {
+        long permissionGrantedTime = sPermissionGrantedTime;
+        if (permissionGrantedTime != NOT_STARTED) {
+            sPermissionGrantedTime = NOT_STARTED;
+            listener.onFirstQueryFinished(time - permissionGrantedTime);
+        }
+    }
+
+    public static void onBucketsAggregated(long startTime, int bucketCount) {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onBucketsAggregated(now() - startTime, bucketCount);
+        }
+    }
+
+    public static void onThumbnailLoaded(DataSource dataSource) {
+        if (sListener == null) {
+            return;
+        }
+        if (dataSource == DataSource.MEMORY_CACHE) {
+            sMemoryHits.incrementAndGet();
+        } else if (dataSource == DataSource.RESOURCE_DISK_CACHE || dataSource == DataSource.DATA_DISK_CACHE) {
+            sDiskHits.incrementAndGet();
+        } else {
+            sMisses.incrementAndGet();
+        }
+        long pickerOpenedTime = sPickerOpenedTime;
+        if (pickerOpenedTime != NOT_STARTED) {
+            sPickerOpenedTime = NOT_STARTED;
+            MetricsListener listener = sListener;
+            if (listener != null) {
+                listener.onFirstThumbnailLoaded(now() - pickerOpenedTime);
+            }
+        }
+    }
+
+    public static void onPickerClosed() {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onThumbnailCacheStats(sMemoryHits.getAndSet(0), sDiskHits.getAndSet(0), sMisses.getAndSet(0));
+        }
+    }
+
+    public static void onScrollFrames(@NonNull FrameStats stats) {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onScrollFrames(stats);
+        }
+    }
+
+    public static void onTransitionPostponed() {
+        sTransitionPostponedTime = now();
+    }
+
+    public static void onTransitionStarted() {
+        long postponedTime = sTransitionPostponedTime;
+        if (postponedTime == NOT_STARTED) {
+            return;
+        }
+        sTransitionPostponedTime = NOT_STARTED;
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onPreviewTransitionPostponed(now() - postponedTime);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.andremion.louvre.SelectionListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report the selection changes to the {@link SelectionListener}, if any.
+ * <p>
+ * The ids of the items selected while the picker is open are kept, so they can be reported again when the items
+ * are unselected from where only their Uris are known, like when the selection is cleared.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+@MainThread
+public final class SelectionEvents {
+
+    @Nullable
+    private static SelectionListener sListener;
+    private static final Map<Uri, Long> sMediaIds = new HashMap<>();
+
+    private SelectionEvents() {
+    }
+
+    public static void setListener(@Nullable SelectionListener listener) {
+        sListener = listener;
+    }
+
+    public static void onSelected(long mediaId, @NonNull Uri uri) {
+        if (sListener != null) {
+            sMediaIds.put(uri, mediaId);
+            sListener.onMediaSelected(mediaId, uri);
+        }
+    }
+
+    public static void onUnselected(long mediaId, @NonNull Uri uri) {
+        if (sListener != null) {
+            sMediaIds.remove(uri);
+            sListener.onMediaUnselected(mediaId, uri);
+        }
+    }
+
+    /**
+     * Report items unselected by their Uris only
+     */
+    public static void onUnselected(@NonNull Collection<Uri> uris) {
+        if (sListener != null) {
+            for (Uri uri : uris) {
+                onUnselected(getMediaId(uri), uri);
+            }
+        }
+    }
+
+    /**
+     * @param cancelled If the picker returned no result, so the items selected while it was open are unselected
+     */
+    public static void onPickerClosed(boolean cancelled) {
+        if (cancelled && sListener != null) {
+            List<Map.Entry<Uri, Long>> selected = new ArrayList<>(sMediaIds.entrySet());
+            for (Map.Entry<Uri, Long> entry : selected) {
+                onUnselected(entry.getValue(), entry.getKey());
+            }
+        }
+        sMediaIds.clear();
+    }
+
+    private static long getMediaId(@NonNull Uri uri) {
+        Long mediaId = sMediaIds.get(uri);
+        if (mediaId != null) {
+            return mediaId;
+        }
+        // The initial selection may come from MediaStore, whose ids are the ids of the default source
+        if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            try {
+                return ContentUris.parseId(uri);
+            } catch (RuntimeException e) {
+                return SelectionListener.NO_ID;
+            }
+        }
+        return SelectionListener.NO_ID;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.request.RequestOptions;
+
+/**
+ * Glide {@link RequestOptions} of the gallery thumbnails.
+ * <p>
+ * The options are part of Glide's memory cache key, so loading an item with the same options
+ * gets the thumbnail already decoded by the gallery, with no I/O at all.
+ * They are shared by size, so they can also be compared by reference.
+ */
+public final class ThumbnailOptions {
+
+    private static final RequestOptions DEFAULT_OPTIONS = RequestOptions.centerCropTransform()
+            .set(ExifThumbnailDecoder.ENABLED, true);
+    private static final SparseArray<RequestOptions> OPTIONS = new SparseArray<>();
+
+    private ThumbnailOptions() {
+    }
+
+    /**
+     * @return The options to load thumbnails in the size of the target view
+     */
+    @NonNull
+    public static RequestOptions getDefault() {
+        return DEFAULT_OPTIONS;
+    }
+
+    /**
+     * @param size The size of the thumbnails or a non positive value for the size of the target view
+     */
+    @NonNull
+    public static synchronized RequestOptions get(int size) {
+        if (size <= 0) {
+            return DEFAULT_OPTIONS;
+        }
+        RequestOptions options = OPTIONS.get(size);
+        if (options == null) {
+            options = DEFAULT_OPTIONS.clone().override(size);
+            OPTIONS.put(size, options);
+        }
+        return options;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.testing.MainLooper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The bookkeeping of {@link ResultProcessor}, with the decoding replaced by writing an empty file
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResultProcessorTest {
+
+    private static final Uri FIRST = Uri.parse("content://media/external/images/media/1");
+    private static final Uri SECOND = Uri.parse("content://media/external/images/media/2");
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Uri> mResults = new ArrayList<>();
+    private final List<ResultProcessor.Options> mProcessed = Collections.synchronizedList(new ArrayList<ResultProcessor.Options>());
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private TestProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mProcessor = new TestProcessor(context, new ResultProcessor.Callback() {
+            @Override
+            public void onProcessed(@NonNull Uri source, @NonNull Uri result) {
+                mResults.add(result);
+            }
+
+            @Override
+            public void onFailed(@NonNull Uri source, @NonNull Exception error) {
+                throw new AssertionError(error);
+            }
+        });
+        mProcessor.setOutputDirectory(mFolder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+    }
+
+    @Test
+    public void defaultSize_isBounded() {
+        process(FIRST);
+
+        assertEquals(ResultProcessor.DEFAULT_MAX_SIZE, mProcessed.get(0).mMaxWidth);
+        assertEquals(ResultProcessor.DEFAULT_MAX_SIZE, mProcessed.get(0).mMaxHeight);
+        assertFalse(mProcessed.get(0).isOriginalSize());
+    }
+
+    @Test
+    public void settingsChangedAfterQueueing_doNotAffectTheQueuedImage() {
+        mProcessor.setMaxSize(100, 100).setQuality(50);
+        mProcessor.process(FIRST);
+        mProcessor.setMaxSize(200, 200).setQuality(80);
+        mRelease.countDown();
+        awaitResults(1);
+
+        ResultProcessor.Options options = mProcessed.get(0);
+        assertEquals(100, options.mMaxWidth);
+        assertEquals(100, options.mMaxHeight);
+        assertEquals(50, options.mQuality);
+    }
+
+    @Test
+    public void processingTwice_decodesOnce() {
+        mProcessor.process(FIRST);
+        mProcessor.process(FIRST);
+        mRelease.countDown();
+        awaitResults(1);
+
+        mProcessor.process(FIRST);
+
+        assertEquals(1, mProcessed.size());
+        assertEquals(2, mResults.size());
+        assertEquals(mResults.get(0), mResults.get(1));
+    }
+
+    @Test
+    public void processingWithOtherSettings_decodesAgain() {
+        process(FIRST);
+        mProcessor.setMaxSize(100, 100);
+        mProcessor.process(FIRST);
+        awaitResults(2);
+
+        assertEquals(2, mProcessed.size());
+        assertFalse(mResults.get(0).equals(mResults.get(1)));
+    }
+
+    @Test
+    public void cancellingQueuedImage_deliversNothing() {
+        mProcessor.process(FIRST);
+        mProcessor.process(SECOND);
+        mProcessor.cancel(FIRST);
+        mRelease.countDown();
+        awaitResults(1);
+        // Let a late delivery of the cancelled image come
+        MainLooper.idle();
+
+        assertEquals(1, mResults.size());
+        // The file written for the cancelled image, if any, is deleted
+        assertEquals(1, mFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void cancellingProcessedImage_deletesItsResults() {
+        process(FIRST);
+        mProcessor.setMaxSize(100, 100);
+        mProcessor.process(FIRST);
+        awaitResults(2);
+
+        mProcessor.cancel(FIRST);
+
+        assertFalse(new File(mResults.get(0).getPath()).exists());
+        assertFalse(new File(mResults.get(1).getPath()).exists());
+    }
+
+    @Test
+    public void cancellingAll_deletesEveryResult() {
+        process(FIRST);
+        mProcessor.process(SECOND);
+        awaitResults(2);
+
+        mProcessor.cancelAll();
+
+        assertEquals(0, mFolder.getRoot().listFiles().length);
+        // Nothing is cached anymore
+        mProcessor.process(FIRST);
+        awaitResults(3);
+        assertEquals(3, mProcessed.size());
+        assertTrue(new File(mResults.get(2).getPath()).exists());
+    }
+
+    private void process(Uri source) {
+        mRelease.countDown();
+        int count = mResults.size();
+        mProcessor.process(source);
+        awaitResults(count + 1);
+    }
+
+    private void awaitResults(final int count) {
+        MainLooper.idleUntil(count + " results", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mResults.size() >= count;
+            }
+        });
+    }
+
+    private class TestProcessor extends ResultProcessor {
+
+        TestProcessor(@NonNull Context context, @NonNull Callback callback) {
+            super(context, callback);
+        }
+
+        @NonNull
+        @Override
+        Uri processImage(@NonNull Uri source, @NonNull Options options) throws Exception {
+            mRelease.await();
+            mProcessed.add(options);
+            return Uri.fromFile(File.createTempFile("result", ".jpg", options.mOutputDirectory));
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.net.Uri
+import android.provider.MediaStore
+import android.webkit.MimeTypeMap
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.Shadows.shadowOf
+import java.io.File
+
+@RunWith(AndroidJUnit4::class)
+class DirectorySourceTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private lateinit var first: File
+    private lateinit var second: File
+    private lateinit var source: DirectorySource
+
+    @Before
+    fun setUp() {
+        shadowOf(MimeTypeMap.getSingleton()).addExtensionMimeTypMapping("jpg", "image/jpeg")
+        first = folder.newFolder("first")
+        second = folder.newFolder("second")
+        source = DirectorySource(first, null, second)
+    }
+
+    @Test
+    fun buckets_areNumberedByRoot() {
+        image(first, "a.jpg", 1000)
+        image(File(second, "nested").apply { mkdirs() }, "b.jpg", 2000)
+        File(second, "notes.txt").writeText("not an image")
+
+        val buckets = source.queryBuckets(context, null, null)!!
+
+        assertArrayEquals(longArrayOf(1, 2), buckets.use { it.readLongs(MediaStore.Images.Media.BUCKET_ID) })
+        val media = source.queryMedia(context, 2, null, null)!!
+        assertEquals(listOf("b.jpg"), media.use { it.readStrings(MediaStore.Images.Media.DISPLAY_NAME) })
+    }
+
+    @Test
+    fun unchangedDirectory_isNotListedAgain() {
+        image(first, "a.jpg", 1000)
+        first.setLastModified(10_000)
+        assertEquals(1, source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.count })
+
+        // Its time is kept, so the cached listing is used
+        image(first, "b.jpg", 2000)
+        first.setLastModified(10_000)
+        assertEquals(1, source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.count })
+
+        first.setLastModified(20_000)
+        assertEquals(2, source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.count })
+    }
+
+    @Test
+    fun changedNestedDirectory_isListedAgain() {
+        val nested = File(first, "nested").apply { mkdirs() }
+        image(nested, "a.jpg", 1000)
+        first.setLastModified(10_000)
+        nested.setLastModified(10_000)
+        assertEquals(1, source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.count })
+
+        image(nested, "b.jpg", 2000)
+        nested.setLastModified(20_000)
+        first.setLastModified(10_000)
+
+        val names = source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!
+            .use { it.readStrings(MediaStore.Images.Media.DISPLAY_NAME) }
+        assertEquals(listOf("b.jpg", "a.jpg"), names)
+    }
+
+    @Test
+    fun ids_areKeptAcrossScans() {
+        val file = image(first, "a.jpg", 1000)
+        val id = source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.readLongs(MediaStore.Images.Media._ID)[0] }
+
+        image(first, "b.jpg", 2000)
+        first.setLastModified(first.lastModified() + 10_000)
+        val ids = source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.readLongs(MediaStore.Images.Media._ID) }
+
+        assertEquals(id, ids[1])
+        assertEquals(Uri.fromFile(file), source.getMediaUri(id))
+    }
+
+    @Test
+    fun ids_areTheSameInAnotherProcess() {
+        for (i in 0 until 20) {
+            image(if (i % 2 == 0) first else second, "$i.jpg", 1000L + i)
+        }
+        val ids = source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.readLongs(MediaStore.Images.Media._ID) }
+
+        // A new source, as after the process died, with its roots scanned in another order
+        val restored = DirectorySource(second, first)
+        val restoredIds = restored.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!
+            .use { it.readLongs(MediaStore.Images.Media._ID) }
+
+        assertArrayEquals(ids, restoredIds)
+    }
+
+    @Test
+    fun deletedFiles_forgetTheirIds() {
+        val file = image(first, "a.jpg", 1000)
+        val id = source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.readLongs(MediaStore.Images.Media._ID)[0] }
+
+        file.delete()
+        first.setLastModified(first.lastModified() + 10_000)
+        assertEquals(0, source.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null)!!.use { it.count })
+
+        assertEquals(Uri.EMPTY, source.getMediaUri(id))
+    }
+
+    private fun image(directory: File, name: String, lastModified: Long): File =
+        File(directory, name).apply {
+            writeBytes(ByteArray(1))
+            setLastModified(lastModified)
+        }
+
+    private fun Cursor.readLongs(column: String): LongArray {
+        val index = getColumnIndex(column)
+        return LongArray(count) { position ->
+            moveToPosition(position)
+            getLong(index)
+        }
+    }
+
+    private fun Cursor.readStrings(column: String): List<String> {
+        val index = getColumnIndex(column)
+        return List(count) { position ->
+            moveToPosition(position)
+            getString(index)
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import androidx.annotation.Nullable;
+import androidx.fragment.app.FragmentActivity;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.core.SyntheticMedia;
+import com.andremion.louvre.testing.FakeMediaProvider;
+import com.andremion.louvre.testing.MainLooper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link MediaLoader} against the {@link FakeMediaProvider} library: the queries it runs, where it runs them
+ * and the cursors it keeps open.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaLoaderTest {
+
+    // Same as the loader, one media loader kept alive per cached bucket
+    private static final int MAX_CACHED_BUCKETS = 4;
+    private static final int VISITED_BUCKETS = 20;
+
+    private FakeMediaProvider mProvider;
+    private ActivityController<FragmentActivity> mController;
+    private MediaLoader mMediaLoader;
+    private Cursor mBuckets;
+    private Cursor mMedia;
+
+    @Before
+    public void setUp() {
+        mProvider = FakeMediaProvider.register();
+        mController = Robolectric.buildActivity(FragmentActivity.class).setup();
+        mMediaLoader = new MediaLoader();
+        mMediaLoader.onAttach(mController.get(), new MediaLoader.Callbacks() {
+            @Override
+            public void onBucketLoadFinished(@Nullable Cursor data) {
+                mBuckets = data;
+            }
+
+            @Override
+            public void onMediaLoadFinished(@Nullable Cursor data) {
+                mMedia = data;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mMediaLoader.onDetach();
+        mController.destroy();
+    }
+
+    @Test
+    public void loadBuckets_queriesOnceInBackground() {
+        mMediaLoader.loadBuckets();
+        MainLooper.idleUntil("buckets", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mBuckets != null;
+            }
+        });
+
+        assertEquals(1, mProvider.getQueryCount());
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+        // Plus the "All Media" bucket
+        assertEquals(mProvider.getBucketCount() + 1, mBuckets.getCount());
+    }
+
+    @Test
+    public void loadBuckets_coversEachBucketWithItsNewestItem() {
+        SyntheticMedia media = mProvider.getMedia();
+        Map<Long, Integer> positions = new HashMap<>();
+        Map<Long, Long> newestDates = new HashMap<>();
+        for (int position = 0; position < media.getRowCount(); position++) {
+            positions.put(media.getIds()[position], position);
+            long bucketId = FakeMediaProvider.toBucketId(media.getBucketIds()[position]);
+            // The media come newest first
+            if (!newestDates.containsKey(bucketId)) {
+                newestDates.put(bucketId, media.getDatesTaken()[position]);
+            }
+        }
+
+        mMediaLoader.loadBuckets();
+        MainLooper.idleUntil("buckets", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mBuckets != null;
+            }
+        });
+
+        // After the "All Media" bucket
+        for (int row = 1; row < mBuckets.getCount(); row++) {
+            mBuckets.moveToPosition(row);
+            long bucketId = mBuckets.getLong(mBuckets.getColumnIndex(MediaStore.Images.Media.BUCKET_ID));
+            int cover = positions.get(mBuckets.getLong(mBuckets.getColumnIndex(MediaStore.Images.Media._ID)));
+            assertEquals(newestDates.get(bucketId).longValue(), media.getDatesTaken()[cover]);
+            // The date of the cover, which the cached cover is keyed by
+            assertEquals(media.getDatesTaken()[cover] / 1000,
+                    mBuckets.getLong(mBuckets.getColumnIndex(MediaStore.Images.Media.DATE_MODIFIED)));
+        }
+    }
+
+    @Test
+    public void loadAllMedia_deliversEveryRowNewestFirst() {
+        loadByBucket(MediaQuery.ALL_MEDIA_BUCKET_ID);
+
+        assertEquals(1, mProvider.getQueryCount());
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+        assertTrue(mMedia instanceof MediaCursor);
+        MediaCursor media = (MediaCursor) mMedia;
+        assertEquals(mProvider.getMedia().getRowCount(), media.getCount());
+        assertEquals(mProvider.getMedia().getRowCount(), media.getIds().length);
+        assertEquals(mProvider.getMedia().getDatesTaken()[0], media.getDateIndex().dateAt(0));
+    }
+
+    @Test
+    public void revisitingBucket_deliversCachedDataAndRevalidatesInBackground() {
+        final long firstBucketId = FakeMediaProvider.toBucketId(0);
+        final long secondBucketId = FakeMediaProvider.toBucketId(1);
+        loadByBucket(firstBucketId);
+        loadByBucket(secondBucketId);
+
+        mMedia = null;
+        mMediaLoader.loadByBucket(firstBucketId);
+
+        // Delivered right away, before the revalidation query
+        assertNotNull(mMedia);
+        assertEquals(mProvider.getRowCount(firstBucketId), mMedia.getCount());
+        MainLooper.idleUntil("revalidation", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mProvider.getQueryCount() == 3;
+            }
+        });
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void visitingManyBuckets_keepsOpenCursorsBounded() {
+        for (int bucket = 0; bucket < VISITED_BUCKETS; bucket++) {
+            loadByBucket(FakeMediaProvider.toBucketId(bucket));
+        }
+
+        assertEquals(VISITED_BUCKETS, mProvider.getQueryCount());
+        assertTrue("Open cursors: " + mProvider.getOpenCursorCount(),
+                mProvider.getOpenCursorCount() <= MAX_CACHED_BUCKETS);
+    }
+
+    private void loadByBucket(final long bucketId) {
+        mMedia = null;
+        mMediaLoader.loadByBucket(bucketId);
+        MainLooper.idleUntil("bucket " + bucketId, new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mMedia != null && mMedia.getCount() == mProvider.getRowCount(bucketId);
+            }
+        });
+    }
+
+}
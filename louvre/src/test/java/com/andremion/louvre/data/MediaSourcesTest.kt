@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.provider.MediaStore
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class MediaSourcesTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    // Bucket ids like the ones of MediaStore, which may be negative
+    private val first = FakeSource("first", mapOf(-7L to longArrayOf(900, 700, 500), 3L to longArrayOf(800)))
+    private val second = FakeSource("second", mapOf(1L to longArrayOf(950, 600), 2L to longArrayOf(750)))
+
+    @Before
+    fun setUp() {
+        MediaSources.set(first, second)
+    }
+
+    @After
+    fun tearDown() {
+        MediaSources.set(MediaStoreSource())
+    }
+
+    @Test
+    fun bucketsOfOtherSources_areNamespaced() {
+        val bucketIds = MediaSources.queryBuckets(context, null, null)!!.use { it.readLongs(MediaStore.Images.Media.BUCKET_ID) }
+
+        assertArrayEquals(longArrayOf(-7, 3, MediaSources.toGlobalId(1, 1), MediaSources.toGlobalId(1, 2)), bucketIds)
+    }
+
+    @Test
+    fun bucketQuery_goesToTheOwningSourceOnly() {
+        val cursor = MediaSources.queryMedia(context, MediaSources.toGlobalId(1, 1), null, null)!!
+
+        val bucketIds = cursor.use { it.readLongs(MediaStore.Images.Media.BUCKET_ID) }
+        assertArrayEquals(longArrayOf(MediaSources.toGlobalId(1, 1), MediaSources.toGlobalId(1, 1)), bucketIds)
+        assertEquals(listOf(1L), second.queriedBuckets)
+        assertEquals(emptyList<Long>(), first.queriedBuckets)
+    }
+
+    @Test
+    fun negativeBucket_goesToTheFirstSource() {
+        MediaSources.queryMedia(context, -7, null, null)!!.close()
+
+        assertEquals(listOf(-7L), first.queriedBuckets)
+        assertEquals(emptyList<Long>(), second.queriedBuckets)
+    }
+
+    @Test
+    fun bucketOfMissingSource_hasNoMedia() {
+        assertNull(MediaSources.queryMedia(context, MediaSources.toGlobalId(5, 1), null, null))
+    }
+
+    @Test
+    fun mediaOfMissingSource_hasEmptyUri() {
+        assertEquals(Uri.EMPTY, MediaSources.getMediaUri(MediaSources.toGlobalId(5, 1)))
+        assertEquals(Uri.parse("second://1"), MediaSources.getMediaUri(MediaSources.toGlobalId(1, 1)))
+    }
+
+    @Test
+    fun readColumns_mergesLikeTheLazyMerge() {
+        val merged = MediaSources.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null) as MergedMediaCursor
+        val lazy = MediaSources.queryMedia(context, ALL_MEDIA_BUCKET_ID, null, null) as MergedMediaCursor
+        val ids = LongArray(merged.count)
+        val dates = LongArray(merged.count)
+
+        merged.use { it.readColumns(ids, dates) }
+
+        lazy.use {
+            assertArrayEquals(it.readLongs(MediaStore.Images.Media._ID), ids)
+            assertArrayEquals(it.readLongs(MediaStore.Images.Media.DATE_TAKEN), dates)
+        }
+        assertArrayEquals(longArrayOf(950, 900, 800, 750, 700, 600, 500), dates)
+    }
+
+    private fun Cursor.readLongs(column: String): LongArray {
+        val index = getColumnIndex(column)
+        return LongArray(count) { position ->
+            moveToPosition(position)
+            getLong(index)
+        }
+    }
+
+    /**
+     * A source with the given dates by bucket, their media ids come in the order they are given
+     */
+    private class FakeSource(private val scheme: String, private val datesByBucket: Map<Long, LongArray>) : MediaSource {
+
+        val queriedBuckets = ArrayList<Long>()
+
+        override fun queryMedia(
+            context: Context,
+            bucketId: Long,
+            mediaTypes: Array<out String>?,
+            cancellationSignal: CancellationSignal?
+        ): Cursor? {
+            if (bucketId != ALL_MEDIA_BUCKET_ID) {
+                queriedBuckets.add(bucketId)
+            }
+            var id = 0L
+            val rows = ArrayList<Array<Any>>()
+            for ((bucket, dates) in datesByBucket) {
+                for (date in dates) {
+                    id++
+                    if (bucketId == ALL_MEDIA_BUCKET_ID || bucketId == bucket) {
+                        rows.add(arrayOf(id, bucket, "$scheme$id", date))
+                    }
+                }
+            }
+            rows.sortByDescending { it[3] as Long }
+            return MatrixCursor(IMAGE_PROJECTION).apply { rows.forEach { addRow(it) } }
+        }
+
+        override fun queryBuckets(
+            context: Context,
+            mediaTypes: Array<out String>?,
+            cancellationSignal: CancellationSignal?
+        ): Cursor? = MatrixCursor(BUCKET_PROJECTION).apply {
+            var id = 0L
+            for ((bucket, dates) in datesByBucket) {
+                addRow(arrayOf(bucket, "$scheme $bucket", id + 1, dates[0] / 1000))
+                id += dates.size
+            }
+        }
+
+        override fun getMediaUri(id: Long): Uri = Uri.parse("$scheme://$id")
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.andremion.louvre.data
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import java.io.File
+
+@RunWith(AndroidJUnit4::class)
+class PlaceholderColorsTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val file: File by lazy { File(folder.root, "colors") }
+
+    @Test
+    fun full_replacesTheOldestColor() {
+        val colors = PlaceholderColors(file)
+        for (id in 1L..MAX_ENTRIES) {
+            colors.put(id, id.toInt())
+        }
+        // Updating a color does not make room
+        colors.put(1, 42)
+
+        colors.put(MAX_ENTRIES + 1L, 0)
+
+        assertFalse(colors.contains(1))
+        assertTrue(colors.contains(2))
+        assertTrue(colors.contains(MAX_ENTRIES + 1L))
+    }
+
+    @Test
+    fun persistedColors_keepTheirOrder() {
+        val colors = PlaceholderColors(file)
+        for (id in 1L..MAX_ENTRIES) {
+            colors.put(id, id.toInt())
+        }
+        colors.save()
+        awaitUntil { file.exists() }
+
+        val restored = PlaceholderColors(file)
+        awaitUntil { restored.contains(MAX_ENTRIES.toLong()) }
+        restored.put(MAX_ENTRIES + 1L, 0)
+
+        assertEquals(2, restored.get(2, 0))
+        assertFalse(restored.contains(1))
+    }
+
+    private fun awaitUntil(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (!condition()) {
+            check(System.currentTimeMillis() < deadline) { "Timed out" }
+            Thread.sleep(10)
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.view.ContextThemeWrapper;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.R;
+import com.andremion.louvre.core.SelectionSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guard the allocation-free bind of {@link GalleryAdapter} against regressions.
+ * <p>
+ * The items are bound into recycled holders, like while scrolling, with the thumbnail request left out,
+ * since it is Glide that allocates there. The allocated bytes are read from the HotSpot
+ * {@link com.sun.management.ThreadMXBean} of the test thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GalleryAdapterAllocationTest {
+
+    private static final int ROW_COUNT = 100;
+    private static final int HOLDER_COUNT = 12;
+    private static final int BIND_COUNT = 1000;
+    // Room for the measurement itself, not for any allocation per bind
+    private static final long MAX_ALLOCATED_BYTES = 512;
+
+    private final com.sun.management.ThreadMXBean mThreadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private RecyclerView mRecyclerView;
+    private TestAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(), R.style.Louvre_Theme_Light);
+        mRecyclerView = new RecyclerView(context);
+        mRecyclerView.setLayoutManager(new GridLayoutManager(context, 3));
+        mAdapter = new TestAdapter();
+        mAdapter.setItemSize(100, 128);
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{MediaStore.Images.Media._ID,
+                MediaStore.Images.Media.BUCKET_ID, MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.DATE_TAKEN});
+        for (int i = 0; i < ROW_COUNT; i++) {
+            cursor.addRow(new Object[]{ROW_COUNT - i, 1, "IMG_" + i + ".jpg", 1_000_000L - i});
+        }
+        mAdapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+    }
+
+    @Test
+    public void bindingOtherMediaDoesNotAllocate() {
+        assertBindDoesNotAllocate(createHolders());
+    }
+
+    @Test
+    public void bindingOtherMediaIntoLightweightCellsDoesNotAllocate() {
+        mAdapter.setLightweightCells(true);
+        assertBindDoesNotAllocate(createHolders());
+    }
+
+    @Test
+    public void contentDescription_isTheLabelOfTheBoundMedia() {
+        GalleryAdapter.ViewHolder holder = createHolders()[0];
+        mAdapter.bindViewHolder(holder, 3);
+        mAdapter.bindViewHolder(holder, 7);
+
+        AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+        holder.mImageView.onInitializeAccessibilityNodeInfo(info);
+
+        assertEquals("IMG_7.jpg", info.getContentDescription());
+    }
+
+    private GalleryAdapter.ViewHolder[] createHolders() {
+        GalleryAdapter.ViewHolder[] holders = new GalleryAdapter.ViewHolder[HOLDER_COUNT];
+        for (int i = 0; i < HOLDER_COUNT; i++) {
+            holders[i] = mAdapter.createViewHolder(mRecyclerView, GalleryAdapter.VIEW_TYPE_MEDIA);
+        }
+        return holders;
+    }
+
+    /**
+     * Each bind puts another item into the holder, as when it comes back from the recycled pool.
+     * The first pass caches the Uris and sets the views up, the measured ones are the steady state of a scroll.
+     */
+    private void assertBindDoesNotAllocate(GalleryAdapter.ViewHolder[] holders) {
+        for (int position = 0; position < ROW_COUNT; position++) {
+            mAdapter.bindViewHolder(holders[position % HOLDER_COUNT], position);
+        }
+        mAdapter.mRequestCount = 0;
+
+        long threadId = Thread.currentThread().getId();
+        long before = mThreadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BIND_COUNT; i++) {
+            mAdapter.bindViewHolder(holders[i % HOLDER_COUNT], i % ROW_COUNT);
+        }
+        long allocated = mThreadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Every bind was of another item than the one the holder had
+        assertEquals(BIND_COUNT, mAdapter.mRequestCount);
+        assertTrue(BIND_COUNT + " binds allocated " + allocated + " bytes", allocated <= MAX_ALLOCATED_BYTES);
+    }
+
+    private static class TestAdapter extends GalleryAdapter {
+
+        int mRequestCount;
+
+        TestAdapter() {
+            super(new SelectionSet<Uri>());
+        }
+
+        @Override
+        void requestThumbnail(@NonNull MediaViewHolder holder, @NonNull Uri data) {
+            mRequestCount++;
+        }
+    }
+
+}
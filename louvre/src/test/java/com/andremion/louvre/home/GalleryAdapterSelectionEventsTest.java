@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.core.SelectionSet;
+import com.andremion.louvre.data.MediaQuery;
+import com.andremion.louvre.testing.RecordingSelectionListener;
+import com.andremion.louvre.util.SelectionEvents;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The selection events reported by {@link GalleryAdapter} when everything is selected or the selection is cleared
+ */
+@RunWith(AndroidJUnit4.class)
+public class GalleryAdapterSelectionEventsTest {
+
+    private static final long[] IDS = {50, 40, 30, 20, 10};
+
+    private final RecordingSelectionListener mListener = new RecordingSelectionListener();
+    private GalleryAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        SelectionEvents.setListener(mListener);
+        mAdapter = new GalleryAdapter(new SelectionSet<Uri>());
+        mAdapter.setMaxSelection(IDS.length);
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{MediaStore.Images.Media._ID,
+                MediaStore.Images.Media.BUCKET_ID, MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.DATE_TAKEN});
+        for (int i = 0; i < IDS.length; i++) {
+            cursor.addRow(new Object[]{IDS[i], 1, "IMG_" + i + ".jpg", 1_000_000L - i});
+        }
+        mAdapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+    }
+
+    @After
+    public void tearDown() {
+        SelectionEvents.onPickerClosed(false);
+        SelectionEvents.setListener(null);
+    }
+
+    @Test
+    public void selectingAll_reportsTheNewItemsInPositionOrder() {
+        mAdapter.setSelection(Collections.singletonList(uri(30)));
+
+        mAdapter.selectAll();
+
+        assertEquals(Arrays.asList(selected(50), selected(40), selected(20), selected(10)), mListener.getEvents());
+    }
+
+    @Test
+    public void selectingAllOverMax_reportsNothing() {
+        mAdapter.setMaxSelection(IDS.length - 1);
+
+        mAdapter.selectAll();
+
+        assertEquals(Collections.<String>emptyList(), mListener.getEvents());
+    }
+
+    @Test
+    public void clearingSelection_reportsEveryItemInSelectionOrder() {
+        // Not reported as selected, so its id comes from its Uri
+        mAdapter.setSelection(Collections.singletonList(uri(30)));
+        mAdapter.selectAll();
+        mListener.clear();
+
+        mAdapter.clearSelection();
+
+        assertEquals(Arrays.asList(unselected(30), unselected(50), unselected(40), unselected(20), unselected(10)),
+                mListener.getEvents());
+    }
+
+    private static Uri uri(long id) {
+        return MediaQuery.getMediaUri(id);
+    }
+
+    private static String selected(long id) {
+        return "+" + id + " " + uri(id);
+    }
+
+    private static String unselected(long id) {
+        return "-" + id + " " + uri(id);
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.Manifest;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.R;
+import com.andremion.louvre.data.MediaQuery;
+import com.andremion.louvre.testing.FakeMediaProvider;
+import com.andremion.louvre.testing.MainLooper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * {@link GalleryFragment} hosted by {@link GalleryActivity}, against the {@link FakeMediaProvider} library:
+ * the queries of each navigation, that none of them runs on the main thread, the memory kept while scrolling
+ * and the permission requests when the activity is recreated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GalleryFragmentTest {
+
+    private static final int SCROLL_STEP = 12;
+
+    private Application mApplication;
+    private FakeMediaProvider mProvider;
+    private ActivityController<GalleryActivity> mController;
+    private GalleryFragment mFragment;
+    private RecyclerView mRecyclerView;
+    private GalleryAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mApplication = ApplicationProvider.getApplicationContext();
+        shadowOf(mApplication).grantPermissions(Manifest.permission.READ_EXTERNAL_STORAGE);
+        mProvider = FakeMediaProvider.register();
+
+        mController = buildActivity();
+        mController.setup();
+        GalleryActivity activity = mController.get();
+        mFragment = fragmentOf(activity);
+        mRecyclerView = (RecyclerView) activity.findViewById(R.id.recycler_view);
+        mAdapter = (GalleryAdapter) mRecyclerView.getAdapter();
+        awaitItemCount(mProvider.getBucketCount() + 1);
+    }
+
+    @After
+    public void tearDown() {
+        mController.pause().stop().destroy();
+    }
+
+    @Test
+    public void openingPicker_queriesBucketsOnceInBackground() {
+        assertEquals(GalleryAdapter.VIEW_TYPE_BUCKET, mAdapter.getItemViewType(0));
+        assertEquals(1, mProvider.getQueryCount());
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void openingBucket_queriesItsMediaOnceInBackground() {
+        long bucketId = FakeMediaProvider.toBucketId(0);
+        mFragment.onBucketClick(bucketId, "Bucket " + bucketId);
+        awaitItemCount(mProvider.getRowCount(bucketId));
+
+        assertEquals(GalleryAdapter.VIEW_TYPE_MEDIA, mAdapter.getItemViewType(0));
+        assertEquals(2, mProvider.getQueryCount());
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void goingBackToBuckets_revalidatesTheCachedBucketsOnce() {
+        long bucketId = FakeMediaProvider.toBucketId(0);
+        mFragment.onBucketClick(bucketId, "Bucket " + bucketId);
+        awaitItemCount(mProvider.getRowCount(bucketId));
+
+        mFragment.loadBuckets();
+        awaitItemCount(mProvider.getBucketCount() + 1);
+        MainLooper.idleUntil("revalidation", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mProvider.getQueryCount() == 3;
+            }
+        });
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void scrollingAllMedia_keepsUriCacheBounded() {
+        mFragment.onBucketClick(MediaQuery.ALL_MEDIA_BUCKET_ID, "All Media");
+        awaitItemCount(mProvider.getMedia().getRowCount());
+
+        GridLayoutManager layoutManager = (GridLayoutManager) mRecyclerView.getLayoutManager();
+        int end = 3 * GalleryAdapter.MAX_CACHED_URIS;
+        for (int position = 0; position < end; position += SCROLL_STEP) {
+            mRecyclerView.scrollToPosition(position);
+            MainLooper.idle();
+            assertTrue("Cached Uris: " + mAdapter.getCachedUriCount(),
+                    mAdapter.getCachedUriCount() <= GalleryAdapter.MAX_CACHED_URIS);
+        }
+        assertTrue(layoutManager.findLastVisibleItemPosition() > GalleryAdapter.MAX_CACHED_URIS);
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void configurationChangeBeforePermissionAnswer_doesNotAskAgain() {
+        shadowOf(mApplication).denyPermissions(Manifest.permission.READ_EXTERNAL_STORAGE);
+        ActivityController<GalleryActivity> controller = buildActivity().setup();
+        try {
+            assertNotNull(shadowOf(controller.get()).getLastRequestedPermission());
+
+            controller.recreate();
+
+            assertTrue(fragmentOf(controller.get()).hasRetainedState());
+            assertNull(shadowOf(controller.get()).getLastRequestedPermission());
+        } finally {
+            controller.pause().stop().destroy();
+        }
+    }
+
+    @Test
+    public void recreatingAfterProcessDeath_asksAgain() {
+        Bundle state = new Bundle();
+        mController.saveInstanceState(state);
+        shadowOf(mApplication).denyPermissions(Manifest.permission.READ_EXTERNAL_STORAGE);
+
+        // A new activity with no retained state, as after the process was killed
+        ActivityController<GalleryActivity> controller = buildActivity().setup(state);
+        try {
+            assertFalse(fragmentOf(controller.get()).hasRetainedState());
+            assertNotNull(shadowOf(controller.get()).getLastRequestedPermission());
+        } finally {
+            controller.pause().stop().destroy();
+        }
+    }
+
+    private static ActivityController<GalleryActivity> buildActivity() {
+        ActivityController<GalleryActivity> controller = Robolectric.buildActivity(GalleryActivity.class);
+        // The host app declares the activity with one of the picker themes
+        controller.get().setTheme(R.style.Louvre_Theme_Light_DarkActionBar);
+        return controller;
+    }
+
+    private static GalleryFragment fragmentOf(GalleryActivity activity) {
+        return (GalleryFragment) activity.getSupportFragmentManager().findFragmentById(R.id.fragment_gallery);
+    }
+
+    private void awaitItemCount(final int count) {
+        MainLooper.idleUntil(count + " items", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                return mAdapter.getItemCount() == count;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.preview;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.viewpager.widget.ViewPager;
+
+import com.andremion.louvre.R;
+import com.andremion.louvre.testing.FakeMediaProvider;
+import com.andremion.louvre.testing.MainLooper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link PreviewActivity} paging a bucket of the {@link FakeMediaProvider} library: a single background query,
+ * none on configuration changes, and only the pages around the current one kept in memory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreviewActivityTest {
+
+    private FakeMediaProvider mProvider;
+    private ActivityController<PreviewActivity> mController;
+    private long mBucketId;
+
+    @Before
+    public void setUp() {
+        mProvider = FakeMediaProvider.register();
+        mBucketId = FakeMediaProvider.toBucketId(0);
+        Context context = ApplicationProvider.getApplicationContext();
+        int position = mProvider.getRowCount(mBucketId) / 2;
+        Intent intent = PreviewActivity.buildIntent(context, mBucketId, position, Collections.<Uri>emptyList(), 10);
+
+        mController = Robolectric.buildActivity(PreviewActivity.class, intent);
+        // The host app declares the activity with the preview theme
+        mController.get().setTheme(R.style.Louvre_Theme_Preview);
+        mController.setup();
+        awaitPages();
+    }
+
+    @After
+    public void tearDown() {
+        mController.pause().stop().destroy();
+    }
+
+    @Test
+    public void opening_queriesTheBucketOnceInBackground() {
+        assertEquals(1, mProvider.getQueryCount());
+        assertEquals(0, mProvider.getMainThreadQueryCount());
+    }
+
+    @Test
+    public void recreating_deliversTheLoadedDataWithNoQuery() {
+        mController.recreate();
+        awaitPages();
+
+        assertEquals(1, mProvider.getQueryCount());
+        assertEquals(mProvider.getRowCount(mBucketId) / 2, getViewPager().getCurrentItem());
+    }
+
+    @Test
+    public void paging_keepsOnlyTheOffscreenPages() {
+        ViewPager viewPager = getViewPager();
+        int maxPages = 2 * viewPager.getOffscreenPageLimit() + 1;
+        for (int i = 0; i < 10; i++) {
+            viewPager.setCurrentItem(viewPager.getCurrentItem() + 1, false);
+            MainLooper.idle();
+            assertTrue("Pages: " + viewPager.getChildCount(), viewPager.getChildCount() <= maxPages);
+        }
+        assertEquals(1, mProvider.getOpenCursorCount());
+    }
+
+    private ViewPager getViewPager() {
+        return (ViewPager) mController.get().findViewById(R.id.view_pager);
+    }
+
+    private void awaitPages() {
+        MainLooper.idleUntil("pages", new MainLooper.Condition() {
+            @Override
+            public boolean isMet() {
+                ViewPager viewPager = getViewPager();
+                return viewPager.getAdapter() != null
+                        && viewPager.getAdapter().getCount() == mProvider.getRowCount(mBucketId);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.testing;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.andremion.louvre.core.SyntheticMedia;
+
+import org.robolectric.Robolectric;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link MediaStore} stand-in serving the rows of a {@link SyntheticMedia} library for
+ * {@link MediaStore.Images.Media#EXTERNAL_CONTENT_URI}, from an in-memory database.
+ * <p>
+ * The queries go through {@link SQLiteQueryBuilder} like the real provider, so the bucket selection hack works
+ * the same. It counts the queries, the ones run on the main thread and the cursors left open.
+ */
+public class FakeMediaProvider extends ContentProvider {
+
+    private static final String TABLE = "images";
+    private static final String MIME_TYPE = "image/jpeg";
+
+    private final AtomicInteger mQueryCount = new AtomicInteger();
+    private final AtomicInteger mMainThreadQueryCount = new AtomicInteger();
+    private final AtomicInteger mOpenCursorCount = new AtomicInteger();
+    private SyntheticMedia mMedia;
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * Register a provider with the default library of {@link SyntheticMedia} as the {@link MediaStore}
+     */
+    public static FakeMediaProvider register() {
+        return Robolectric.buildContentProvider(FakeMediaProvider.class).create(MediaStore.AUTHORITY).get();
+    }
+
+    /**
+     * The bucket id of the given bucket of {@link SyntheticMedia}.
+     * They start from 1, since 0 is the "All Media" bucket.
+     */
+    public static long toBucketId(long syntheticBucket) {
+        return syntheticBucket + 1;
+    }
+
+    @Override
+    public boolean onCreate() {
+        mMedia = new SyntheticMedia();
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL("CREATE TABLE " + TABLE + " ("
+                + MediaStore.Images.Media._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Images.Media.BUCKET_ID + " INTEGER, "
+                + MediaStore.Images.Media.BUCKET_DISPLAY_NAME + " TEXT, "
+                + MediaStore.Images.Media.DISPLAY_NAME + " TEXT, "
+                + MediaStore.Images.Media.MIME_TYPE + " TEXT, "
+                + MediaStore.Images.Media.DATE_TAKEN + " INTEGER, "
+                + MediaStore.Images.Media.DATE_MODIFIED + " INTEGER)");
+        mDatabase.execSQL("CREATE INDEX bucket_index ON " + TABLE + " ("
+                + MediaStore.Images.Media.BUCKET_ID + ", " + MediaStore.Images.Media.DATE_TAKEN + ")");
+        mDatabase.execSQL("CREATE INDEX date_index ON " + TABLE + " (" + MediaStore.Images.Media.DATE_TAKEN + ")");
+        insertMedia();
+        return true;
+    }
+
+    private void insertMedia() {
+        long[] ids = mMedia.getIds();
+        long[] bucketIds = mMedia.getBucketIds();
+        long[] datesTaken = mMedia.getDatesTaken();
+        SQLiteStatement statement = mDatabase.compileStatement("INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+        mDatabase.beginTransaction();
+        try {
+            for (int position = 0; position < ids.length; position++) {
+                long bucketId = toBucketId(bucketIds[position]);
+                statement.bindLong(1, ids[position]);
+                statement.bindLong(2, bucketId);
+                statement.bindString(3, "Bucket " + bucketId);
+                statement.bindString(4, "IMG_" + ids[position] + ".jpg");
+                statement.bindString(5, MIME_TYPE);
+                statement.bindLong(6, datesTaken[position]);
+                statement.bindLong(7, datesTaken[position] / 1000);
+                statement.executeInsert();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            statement.close();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder,
+                        @Nullable CancellationSignal cancellationSignal) {
+        if (!MediaStore.Images.Media.EXTERNAL_CONTENT_URI.equals(uri)) {
+            return null;
+        }
+        mQueryCount.incrementAndGet();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mMainThreadQueryCount.incrementAndGet();
+        }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLE);
+        Cursor cursor = builder.query(mDatabase, projection, selection, selectionArgs,
+                null, null, sortOrder, null, cancellationSignal);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        mOpenCursorCount.incrementAndGet();
+        return new TrackedCursor(cursor);
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    public SyntheticMedia getMedia() {
+        return mMedia;
+    }
+
+    /**
+     * @return The number of media rows of the given bucket, or of every bucket for 0
+     */
+    public int getRowCount(long bucketId) {
+        if (bucketId == 0) {
+            return mMedia.getRowCount();
+        }
+        int count = 0;
+        for (long syntheticBucket : mMedia.getBucketIds()) {
+            if (toBucketId(syntheticBucket) == bucketId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of buckets with some media
+     */
+    public int getBucketCount() {
+        long[] bucketIds = mMedia.getBucketIdsByBucket();
+        int count = 0;
+        for (int position = 0; position < bucketIds.length; position++) {
+            if (position == 0 || bucketIds[position] != bucketIds[position - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getQueryCount() {
+        return mQueryCount.get();
+    }
+
+    public int getMainThreadQueryCount() {
+        return mMainThreadQueryCount.get();
+    }
+
+    public int getOpenCursorCount() {
+        return mOpenCursorCount.get();
+    }
+
+    private class TrackedCursor extends CursorWrapper {
+
+        private boolean mClosed;
+
+        TrackedCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            synchronized (this) {
+                if (!mClosed) {
+                    mClosed = true;
+                    mOpenCursorCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+}
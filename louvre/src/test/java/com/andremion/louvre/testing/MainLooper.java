@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.testing;
+
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Helpers to wait on the paused main looper of Robolectric for work done in background,
+ * like the queries of the loaders.
+ */
+public final class MainLooper {
+
+    public interface Condition {
+        boolean isMet();
+    }
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FRAME_MILLIS = 16;
+
+    private MainLooper() {
+    }
+
+    /**
+     * Run the main looper, a frame at a time, until the condition is met
+     *
+     * @param what Describes the condition when it times out
+     */
+    public static void idleUntil(String what, Condition condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            idle();
+            if (condition.isMet()) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            try {
+                Thread.sleep(FRAME_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted waiting for " + what);
+            }
+        }
+    }
+
+    /**
+     * Run the tasks posted to the main looper and the next frame
+     */
+    public static void idle() {
+        shadowOf(Looper.getMainLooper()).idleFor(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+}
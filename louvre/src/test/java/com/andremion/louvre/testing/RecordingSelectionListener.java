@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.testing;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import com.andremion.louvre.SelectionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record the selection events as "+id uri" when selected and "-id uri" when unselected, in the order they come
+ */
+public class RecordingSelectionListener implements SelectionListener {
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    @Override
+    public void onMediaSelected(long mediaId, @NonNull Uri uri) {
+        mEvents.add("+" + mediaId + " " + uri);
+    }
+
+    @Override
+    public void onMediaUnselected(long mediaId, @NonNull Uri uri) {
+        mEvents.add("-" + mediaId + " " + uri);
+    }
+
+    public List<String> getEvents() {
+        return mEvents;
+    }
+
+    public void clear() {
+        mEvents.clear();
+    }
+
+}
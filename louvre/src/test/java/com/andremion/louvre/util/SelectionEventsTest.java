@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.andremion.louvre.SelectionListener;
+import com.andremion.louvre.testing.RecordingSelectionListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class SelectionEventsTest {
+
+    private static final Uri MEDIA = Uri.parse("content://media/external/images/media/42");
+    private static final Uri FILE = Uri.parse("file:///data/user/0/app/files/a.jpg");
+    private static final Uri DOCUMENT = Uri.parse("content://com.example.documents/document/image:7");
+
+    private final RecordingSelectionListener mListener = new RecordingSelectionListener();
+
+    @Before
+    public void setUp() {
+        SelectionEvents.setListener(mListener);
+    }
+
+    @After
+    public void tearDown() {
+        SelectionEvents.onPickerClosed(false);
+        SelectionEvents.setListener(null);
+    }
+
+    @Test
+    public void unselectingByUri_reportsTheIdItWasSelectedWith() {
+        SelectionEvents.onSelected(7, FILE);
+        SelectionEvents.onUnselected(Collections.singletonList(FILE));
+
+        assertEquals(Arrays.asList("+7 " + FILE, "-7 " + FILE), mListener.getEvents());
+    }
+
+    @Test
+    public void unselectingUnknownMediaStoreUri_parsesItsId() {
+        SelectionEvents.onUnselected(Collections.singletonList(MEDIA));
+
+        assertEquals(Collections.singletonList("-42 " + MEDIA), mListener.getEvents());
+    }
+
+    @Test
+    public void unselectingUnknownUriWithNoId_reportsNoId() {
+        SelectionEvents.onUnselected(Arrays.asList(FILE, DOCUMENT));
+
+        assertEquals(Arrays.asList("-" + SelectionListener.NO_ID + " " + FILE,
+                "-" + SelectionListener.NO_ID + " " + DOCUMENT), mListener.getEvents());
+    }
+
+    @Test
+    public void selectionWithNoListener_isNotKept() {
+        SelectionEvents.setListener(null);
+        SelectionEvents.onSelected(7, FILE);
+        SelectionEvents.setListener(mListener);
+        SelectionEvents.onUnselected(Collections.singletonList(FILE));
+
+        assertEquals(Collections.singletonList("-" + SelectionListener.NO_ID + " " + FILE), mListener.getEvents());
+    }
+
+    @Test
+    public void cancellingPicker_unselectsWhatWasSelected() {
+        SelectionEvents.onSelected(7, FILE);
+        SelectionEvents.onSelected(42, MEDIA);
+        SelectionEvents.onUnselected(42, MEDIA);
+        mListener.clear();
+
+        SelectionEvents.onPickerClosed(true);
+
+        assertEquals(Collections.singletonList("-7 " + FILE), mListener.getEvents());
+    }
+
+    @Test
+    public void closingPickerWithResult_forgetsTheSelection() {
+        SelectionEvents.onSelected(7, FILE);
+        mListener.clear();
+
+        SelectionEvents.onPickerClosed(false);
+        SelectionEvents.onPickerClosed(true);
+        SelectionEvents.onUnselected(Collections.singletonList(FILE));
+
+        assertEquals(Collections.singletonList("-" + SelectionListener.NO_ID + " " + FILE), mListener.getEvents());
+    }
+
+}
@@ -87,7 +87,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == LOUVRE_REQUEST_CODE && resultCode == RESULT_OK) {
-            mAdapter.swapData(mSelection = GalleryActivity.getSelection(data));
+            mAdapter.swapData(mSelection = GalleryActivity.getSelection(data), GalleryActivity.getThumbnailOptions(data));
             return;
         }
         super.onActivityResult(requestCode, resultCode, data);
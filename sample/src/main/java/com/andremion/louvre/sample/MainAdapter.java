@@ -17,6 +17,7 @@
 package com.andremion.louvre.sample;
 
 import android.net.Uri;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -24,6 +25,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.andremion.louvre.util.ThumbnailOptions;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
 
@@ -33,6 +35,7 @@ import java.util.List;
 class MainAdapter extends RecyclerView.Adapter<MainAdapter.ViewHolder> {
 
     private final List<Uri> mData;
+    private RequestOptions mThumbnailOptions = ThumbnailOptions.getDefault();
 
     MainAdapter() {
         mData = new ArrayList<>();
@@ -48,11 +51,11 @@ class MainAdapter extends RecyclerView.Adapter<MainAdapter.ViewHolder> {
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
         Uri data = mData.get(position);
+        // The same options of the gallery, so the thumbnails come from memory cache
         Glide.with(holder.mImageView.getContext())
                 .load(data)
-                .apply(RequestOptions.skipMemoryCacheOf(true)
-                        .centerCrop()
-                        .placeholder(com.andremion.louvre.R.color.gallery_item_background))
+                .apply(mThumbnailOptions)
+                .placeholder(com.andremion.louvre.R.color.gallery_item_background)
                 .into(holder.mImageView);
     }
 
@@ -61,7 +64,8 @@ class MainAdapter extends RecyclerView.Adapter<MainAdapter.ViewHolder> {
         return mData.size();
     }
 
-    void swapData(@Nullable List<Uri> data) {
+    void swapData(@Nullable List<Uri> data, @NonNull RequestOptions thumbnailOptions) {
+        mThumbnailOptions = thumbnailOptions;
         if (!mData.equals(data)) {
             mData.clear();
             if (data != null) {